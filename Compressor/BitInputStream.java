@@ -8,49 +8,78 @@
 // BitInputStream has the following public methods:
 //     public BitInputStream(String file)
 //         opens an input stream with the given file name
+//     public BitInputStream(InputStream input)
+//         reads bits from the given stream, starting at its header byte
 //     public int nextBit()
 //         reads the next bit from input (throws -1 if at end of file)
 //     public boolean hasNextBit()
 //         returns true if there's another bit in the input stream to be read
+//     public int availableBits(int n)
+//         returns how many of the next n bits (up to MAX_BITS) can be read
+//     public int peekBits(int n)
+//         returns the next n bits (up to MAX_BITS) without consuming them
+//     public void skipBits(int n)
+//         consumes the next n bits
+//     public int readBits(int n)
+//         reads the next n bits (up to MAX_BITS)
 //     public void close()
 //         closes the input
+//
+// Multi-bit reads return the first bit read in the lowest position, which is
+// the same order in which the bits are packed into each byte.
 
 import java.io.*;
 import java.util.*;
 
-public class BitInputStream {
-    private FileInputStream input;
-    private int currentByte;     // current set of bits (buffer)
-    private int nextByte;        // next set of bits (buffer)
-    private int numBits;         // how many bits from buffer have been used
+public class BitInputStream implements Closeable {
+    private InputStream input;
+    private byte[] buffer;       // bytes read from input but not yet used
+    private int bufferPos;       // index of the next unused byte in buffer
+    private int bufferLen;       // how many bytes of buffer hold data
+    private boolean inputDone;   // true once input has reached end of file
+    private long bits;           // buffered bits, the next bit is the lowest
+    private int numBits;         // how many bits are buffered in bits
     private int remainingAtEnd;  // how many bits will be remaining at the end
                                  // after we're done
 
+    public static final int MAX_BITS = 32;   // most bits per multi-bit read
+
     private static final int BYTE_SIZE = 8;  // bits per byte
+    private static final int BUFFER_SIZE = 1 << 16;  // bytes per read call
 
     // pre : given file name is legal
     // post: creates a BitInputStream reading input from the file
     public BitInputStream(String file) {
-        try {
-            this.input = new FileInputStream(file);
-            
-            // Read in the number of remaining bits at the end
-            this.remainingAtEnd = this.input.read();
+        this(open(file));
+    }
+
+    // post: creates a BitInputStream reading input from the given stream,
+    //       whose first byte is the count of padding bits at the end
+    public BitInputStream(InputStream input) {
+        this.input = input;
+        this.buffer = new byte[BUFFER_SIZE];
 
-            // Set up the nextByte field.
-            this.nextByte = this.input.read();
+        // Read in the number of remaining bits at the end
+        this.refill();
+        if (this.bufferPos < this.bufferLen) {
+            this.remainingAtEnd = this.buffer[this.bufferPos++] & 0xff;
+        }
+    }
+
+    // post: opens the given file, converting failures to RuntimeException
+    private static InputStream open(String file) {
+        try {
+            return new FileInputStream(file);
         } catch (IOException ex) {
             throw new RuntimeException(ex.toString());
         }
-
-        this.nextByte();
     }
 
     public boolean hasNextBit() {
-        boolean atEnd = this.currentByte == -1;
-        boolean onlyRemaining = this.nextByte == -1 
-                && BYTE_SIZE - this.numBits == this.remainingAtEnd;
-        return !atEnd && !onlyRemaining;
+        if (this.numBits == 0) {
+            this.fill();
+        }
+        return this.numBits > 0;
     }
 
     // post: reads next bit from input (-1 if at end of file)
@@ -60,27 +89,114 @@ public class BitInputStream {
         if (!this.hasNextBit()) {
             throw new NoSuchElementException();
         }
-        int result = this.currentByte % 2;
-        this.currentByte /= 2;
-        this.numBits++;
-        if (this.numBits == BYTE_SIZE) {
-            this.nextByte();
+        int result = (int) this.bits & 1;
+        this.bits >>>= 1;
+        this.numBits--;
+        return result;
+    }
+
+    // pre : 0 <= n <= MAX_BITS
+    // post: returns how many of the next n bits are left in the input
+    public int availableBits(int n) {
+        checkCount(n);
+        if (this.numBits < n) {
+            this.fill();
         }
+        return Math.min(n, this.numBits);
+    }
+
+    // pre : 0 <= n <= MAX_BITS
+    // post: returns the next n bits without consuming them; positions past
+    //       the end of the input are 0
+    public int peekBits(int n) {
+        checkCount(n);
+        if (this.numBits < n) {
+            this.fill();
+        }
+        return (int) (this.bits & ((1L << n) - 1));
+    }
+
+    // post: consumes the next n bits
+    //       throws NoSuchElementException if fewer than n bits are left
+    public void skipBits(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Illegal bit count: " + n);
+        }
+        while (n > 0) {
+            if (this.numBits == 0) {
+                this.fill();
+                if (this.numBits == 0) {
+                    throw new NoSuchElementException();
+                }
+            }
+            int step = Math.min(n, this.numBits);
+            this.bits = step == 64 ? 0 : this.bits >>> step;
+            this.numBits -= step;
+            n -= step;
+        }
+    }
+
+    // pre : 0 <= n <= MAX_BITS
+    // post: reads and returns the next n bits
+    //       throws NoSuchElementException if fewer than n bits are left
+    public int readBits(int n) {
+        if (this.availableBits(n) < n) {
+            throw new NoSuchElementException();
+        }
+        int result = this.peekBits(n);
+        this.skipBits(n);
         return result;
     }
 
-    // post: refreshes the internal buffer with the next BYTE_SIZE bits
-    private void nextByte() {
-        this.currentByte = this.nextByte;
-        if (this.currentByte != -1) {
-            try {
-                this.nextByte = this.input.read();
-            } catch (IOException e) {
-                throw new RuntimeException(e.toString());
+    // post: throws IllegalArgumentException if n bits can't be read at once
+    private static void checkCount(int n) {
+        if (n < 0 || n > MAX_BITS) {
+            throw new IllegalArgumentException("Illegal bit count: " + n);
+        }
+    }
+
+    // post: tops up the bit buffer with whole bytes from the byte buffer,
+    //       dropping the padding bits of the final byte
+    private void fill() {
+        while (this.numBits <= Long.SIZE - BYTE_SIZE) {
+            // keep a byte of lookahead so the final byte can be recognized
+            if (this.bufferLen - this.bufferPos < 2 && !this.inputDone) {
+                this.refill();
+            }
+            if (this.bufferPos == this.bufferLen) {
+                return;
+            }
+            long next = this.buffer[this.bufferPos++] & 0xff;
+            int count = BYTE_SIZE;
+            if (this.inputDone && this.bufferPos == this.bufferLen) {
+                count = Math.max(count - this.remainingAtEnd, 0);
+                next &= (1 << count) - 1;
             }
+            this.bits |= next << this.numBits;
+            this.numBits += count;
         }
+    }
 
-        this.numBits = 0;
+    // post: moves unused bytes to the front of the byte buffer and reads
+    //       until it holds at least two bytes or the input is done
+    private void refill() {
+        int left = this.bufferLen - this.bufferPos;
+        System.arraycopy(this.buffer, this.bufferPos, this.buffer, 0, left);
+        this.bufferPos = 0;
+        this.bufferLen = left;
+        try {
+            while (this.bufferLen < 2 && !this.inputDone) {
+                int count = this.input.read(this.buffer, this.bufferLen,
+                        this.buffer.length - this.bufferLen);
+                if (count < 0) {
+                    this.inputDone = true;
+                } else {
+                    this.bufferLen += count;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString());
+        }
     }
 
     // post: input is closed
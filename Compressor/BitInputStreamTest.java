@@ -0,0 +1,149 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+public class BitInputStreamTest {
+
+    /**
+     * Returns a stream over the bytes that hands out at most three bytes
+     * per read, so the bit buffer is topped up from many short reads
+     */
+    private static InputStream trickle(byte[] bytes) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1 + (pos % 3)));
+            }
+        };
+    }
+
+    /**
+     * Returns bit i of the stream in bytes, after its padding count
+     */
+    private static int bit(byte[] bytes, long i) {
+        return bytes[1 + (int) (i / 8)] >>> (i % 8) & 1;
+    }
+
+    /**
+     * Reads of any width, mixed with peeks, skips and single bits, give the
+     * bits in the order they were packed, across many buffer refills and
+     * from an input that returns a few bytes at a time
+     */
+    @Test
+    public void testBulkReadsMatchBits() {
+        Random random = new Random(1);
+        byte[] bytes = new byte[200000];
+        random.nextBytes(bytes);
+        bytes[0] = 5;
+        long total = 8L * (bytes.length - 1) - 5;
+
+        for (InputStream source : new InputStream[] {new ByteArrayInputStream(bytes),
+                trickle(bytes)}) {
+            BitInputStream input = new BitInputStream(source);
+            long position = 0;
+            while (position < total) {
+                int n = random.nextInt(BitInputStream.MAX_BITS + 1);
+                int count = (int) Math.min(n, total - position);
+                Assert.assertEquals(count, input.availableBits(n));
+                int expected = 0;
+                for (int i = 0; i < count; i++) {
+                    expected |= bit(bytes, position + i) << i;
+                }
+                Assert.assertEquals(expected, input.peekBits(n));
+                switch (random.nextInt(3)) {
+                    case 0:
+                        input.skipBits(count);
+                        break;
+                    case 1:
+                        Assert.assertEquals(expected, input.readBits(count));
+                        break;
+                    default:
+                        for (int i = 0; i < count; i++) {
+                            Assert.assertEquals(expected >>> i & 1, input.nextBit());
+                        }
+                }
+                position += count;
+            }
+            Assert.assertFalse(input.hasNextBit());
+        }
+    }
+
+    /**
+     * At the end of the input, peeks fill the missing bits with 0s,
+     * availableBits counts what is left without the padding, and reads or
+     * skips past the end are refused
+     */
+    @Test
+    public void testPeekAndSkipAtEnd() {
+        //13 bits: eight 1s, then 1, 1, 0, 1, 1 and three bits of padding
+        byte[] bytes = {3, (byte) 0xff, 0b1011011};
+        BitInputStream input = new BitInputStream(new ByteArrayInputStream(bytes));
+        Assert.assertEquals(13, input.availableBits(BitInputStream.MAX_BITS));
+        Assert.assertEquals(0b1101111111111, input.peekBits(16));
+        input.skipBits(10);
+        Assert.assertEquals(3, input.availableBits(10));
+        Assert.assertEquals(0b110, input.peekBits(10));
+        try {
+            input.readBits(4);
+            Assert.fail("read 4 of 3 bits");
+        } catch (NoSuchElementException expected) {
+            //only 3 bits are left
+        }
+        Assert.assertEquals(0b110, input.readBits(3));
+        Assert.assertEquals(0, input.availableBits(1));
+        Assert.assertEquals(0, input.peekBits(8));
+        Assert.assertFalse(input.hasNextBit());
+        input.skipBits(0);
+        try {
+            input.skipBits(1);
+            Assert.fail("skipped past the end");
+        } catch (NoSuchElementException expected) {
+            //no bits are left
+        }
+    }
+
+    /**
+     * An empty input, or one holding only the padding count, has no bits
+     */
+    @Test
+    public void testNoBits() {
+        for (byte[] bytes : new byte[][] {{}, {0}}) {
+            BitInputStream input = new BitInputStream(new ByteArrayInputStream(bytes));
+            Assert.assertFalse(input.hasNextBit());
+            Assert.assertEquals(0, input.availableBits(BitInputStream.MAX_BITS));
+            Assert.assertEquals(0, input.peekBits(BitInputStream.MAX_BITS));
+            try {
+                input.nextBit();
+                Assert.fail("read a bit of nothing");
+            } catch (NoSuchElementException expected) {
+                //there are no bits
+            }
+        }
+    }
+
+    /**
+     * Widths beyond MAX_BITS, or negative, are refused
+     */
+    @Test
+    public void testBadCounts() {
+        BitInputStream input = new BitInputStream(new ByteArrayInputStream(new byte[] {0, 1}));
+        for (int n : new int[] {-1, BitInputStream.MAX_BITS + 1}) {
+            try {
+                input.peekBits(n);
+                Assert.fail("peeked " + n + " bits");
+            } catch (IllegalArgumentException expected) {
+                //not a width a read can have
+            }
+        }
+        try {
+            input.skipBits(-1);
+            Assert.fail("skipped -1 bits");
+        } catch (IllegalArgumentException expected) {
+            //not a bit count
+        }
+    }
+}
@@ -4,28 +4,72 @@
 // a number of bits that is a multiple of 8.  In effect, whatever bits are
 // output to the file are padded at the end with 0's to make the total
 // number of bits a multiple of 8.
+//
+// The first byte of the output is the number of padding bits at the end.
+// When writing to a FileChannel the bytes are streamed out through a fixed
+// size buffer and that first byte is patched in when the stream is closed;
+// a checksum given with the channel sees every byte after the padding count
+// as it is written, then the padding count itself once it is known.
+// When writing to a PrintStream, which can't be rewound, the packed bytes
+// are held in memory until close, so that constructor is deprecated: write
+// to a FileChannel instead, or size the output from the code lengths and
+// pack into it directly as BlockCompressor and Order1Compressor do.
 
 import java.io.*;
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Checksum;
 
-public class BitOutputStream {
+public class BitOutputStream implements Closeable {
 	private PrintStream output;
-    private List<Integer> buffer;
-	private int currentByte; // a buffer used to build up next set of digits
-	private int numBits; // how many digits are currently in the buffer
+	private ByteArrayOutputStream pending; // packed bytes held for output
+	private FileChannel channel;   // streaming destination, if any
+	private long headerPosition;   // where the padding count goes in channel
+	private Checksum checksum;     // sees the bytes written to channel, if any
+	private int unchecked;         // leading bytes of buffer it must skip
+	private byte[] buffer;         // packed bytes not yet handed on
+	private int bufferLen;         // how many bytes of buffer are in use
+	private long peakHeld;         // most packed bytes held in memory at once
+	private long bits;             // a buffer used to build up next set of digits
+	private int numBits;           // how many digits are currently in bits
+	private boolean closed;
 	private boolean debug; // set to true to write ASCII 0s and 1s rather than
 							// bits
 
 	private static final int BYTE_SIZE = 8; // digits per byte
+	private static final int BUFFER_SIZE = 1 << 16; // bytes per flush
 
-	// Creates a BitOutputStream sending output to the given stream. If debug
-	// is set to true, bits are printed as ASCII 0s and 1s.
+	// Creates a BitOutputStream sending output to the given stream. Every
+	// packed byte is held in memory until close, as the padding count that
+	// comes first is only known then.
+	@Deprecated
 	public BitOutputStream(PrintStream output) {
-        this.buffer = new ArrayList<Integer>();
+		this.pending = new ByteArrayOutputStream();
+		this.buffer = new byte[BUFFER_SIZE];
 		this.output = output;
 		this.debug = false;
 	}
 
+	// Creates a BitOutputStream streaming output to the given channel,
+	// starting at its current position. The channel is closed by close().
+	public BitOutputStream(FileChannel channel) throws IOException {
+		this.channel = channel;
+		this.headerPosition = channel.position();
+		this.buffer = new byte[BUFFER_SIZE];
+		this.buffer[0] = 0; // placeholder for the padding count
+		this.bufferLen = 1;
+		this.unchecked = 1;
+		this.debug = false;
+	}
+
+	// Creates a BitOutputStream streaming output to the given channel, as
+	// above, and adding the bytes after the padding count to the checksum
+	// as they are written, then the padding count when the stream is closed.
+	public BitOutputStream(FileChannel channel, Checksum checksum) throws IOException {
+		this(channel);
+		this.checksum = checksum;
+	}
+
 
 	// Creates a BitOutputStream sending output to the given stream. If debug
 	// is set to true, bits are printed as ASCII 0s and 1s.
@@ -37,46 +81,141 @@ public class BitOutputStream {
 
 	// Writes given bit to output
 	public void write(int bit) {
+		if (bit < 0 || bit > 1) {
+			throw new IllegalArgumentException("Illegal bit: " + bit);
+		}
+		this.writeBits(bit, 1);
+	}
+
+	// Writes the low len bits of code to output, lowest bit first
+	public void writeBits(long code, int len) {
+		if (len < 0 || len > Long.SIZE) {
+			throw new IllegalArgumentException("Illegal bit count: " + len);
+		}
 		if (this.debug) {
-			System.out.print(bit);
-			output.print(bit);
-		} else {
-			if (bit < 0 || bit > 1) {
-				throw new IllegalArgumentException("Illegal bit: " + bit);
+			for (int i = 0; i < len; i++) {
+				long bit = (code >>> i) & 1;
+				System.out.print(bit);
+				output.print(bit);
 			}
-			this.currentByte += bit << this.numBits;
-			this.numBits++;
-			if (this.numBits == BYTE_SIZE) {
-				this.buffer.add(this.currentByte);
-				this.numBits = 0;
-				this.currentByte = 0;
+		} else if (len > Integer.SIZE) {
+			this.writeBits(code, Integer.SIZE);
+			this.writeBits(code >>> Integer.SIZE, len - Integer.SIZE);
+		} else if (len > 0) {
+			this.bits |= (code & (-1L >>> (Long.SIZE - len))) << this.numBits;
+			this.numBits += len;
+			if (this.numBits >= Integer.SIZE) {
+				this.drainBits();
 			}
 		}
 	}
 
-	// post: output is closed
-	public void close() {
-		if(!debug) {
-			int remaining = BYTE_SIZE - this.numBits;
+	// moves every whole byte of bits into the byte buffer
+	private void drainBits() {
+		while (this.numBits >= BYTE_SIZE) {
+			this.buffer[this.bufferLen++] = (byte) this.bits;
+			this.bits >>>= BYTE_SIZE;
+			this.numBits -= BYTE_SIZE;
+			if (this.bufferLen == this.buffer.length) {
+				this.flushBuffer();
+			}
+		}
+	}
 
-			if (remaining == 8) {
-				remaining = 0;
+	// hands the byte buffer on to the channel or the pending bytes
+	private void flushBuffer() {
+		long held = this.bufferLen + (this.pending == null ? 0 : this.pending.size());
+		this.peakHeld = Math.max(this.peakHeld, held);
+		try {
+			if (this.channel != null) {
+				ByteBuffer bytes = ByteBuffer.wrap(this.buffer, 0, this.bufferLen);
+				while (bytes.hasRemaining()) {
+					this.channel.write(bytes);
+				}
+				if (this.checksum != null) {
+					this.checksum.update(this.buffer, this.unchecked,
+							this.bufferLen - this.unchecked);
+				}
+				this.unchecked = 0;
+			} else {
+				this.pending.write(this.buffer, 0, this.bufferLen);
 			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.bufferLen = 0;
+	}
 
-        /* Flush the last byte (if there is one) */
-			if (remaining > 0) {
-				this.buffer.add(this.currentByte);
+	// Returns the most packed bytes this stream has held in memory at once:
+	// those in its byte buffer plus, when writing to a PrintStream, those
+	// held until close. Complete once the stream is closed
+	public long peakBufferedBytes() {
+		return this.peakHeld;
+	}
+
+	// post: output is closed
+	public void close() {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		if (debug) {
+			this.output.close();
+			return;
+		}
+		// the destination is closed even if the last bytes can't be written
+		try {
+			this.finish();
+		} finally {
+			if (this.channel != null) {
+				try {
+					this.channel.close();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			} else {
+				this.output.close();
 			}
+		}
+	}
+
+	// writes out the last bits and the padding count
+	private void finish() {
+		this.drainBits();
+		int remaining = BYTE_SIZE - this.numBits;
+
+		if (remaining == 8) {
+			remaining = 0;
+		}
 
-        /* Now that we've received all the output, prepend it with the number
-         * of missing bits from the end.
-         */
+		/* Flush the last byte (if there is one) */
+		if (remaining > 0) {
+			this.numBits = BYTE_SIZE;
+			this.drainBits();
+		}
+		this.flushBuffer();
+
+		/* Now that we've received all the output, fill in the number of
+		 * missing bits from the end at the front.
+		 */
+		if (this.channel != null) {
+			try {
+				ByteBuffer header = ByteBuffer.wrap(new byte[] {(byte) remaining});
+				this.channel.write(header, this.headerPosition);
+				if (this.checksum != null) {
+					this.checksum.update(remaining);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		} else {
 			this.output.write(remaining);
-			for (int b : this.buffer) {
-				this.output.write(b);
+			try {
+				this.pending.writeTo(this.output);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
 		}
-		this.output.close();
 	}
 
 	// included to ensure that the stream is closed
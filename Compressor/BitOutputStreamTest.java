@@ -0,0 +1,167 @@
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+public class BitOutputStreamTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Opens a fresh file for writing
+     */
+    private FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Writes pieces of random lengths, up to a whole long, to the stream
+     * and returns the bits as a string of 0s and 1s, first bit first
+     */
+    private static String writeRandomPieces(BitOutputStream output, int pieces, long seed) {
+        Random random = new Random(seed);
+        StringBuilder written = new StringBuilder();
+        for (int i = 0; i < pieces; i++) {
+            int length = random.nextInt(Long.SIZE + 1);
+            long code = random.nextLong();
+            output.writeBits(code, length);
+            for (int bit = 0; bit < length; bit++) {
+                written.append((code >>> bit) & 1);
+            }
+        }
+        return written.toString();
+    }
+
+    /**
+     * Reads every bit of the stream as a string of 0s and 1s
+     */
+    private static String readAll(byte[] bytes) {
+        BitInputStream input = new BitInputStream(new ByteArrayInputStream(bytes));
+        StringBuilder read = new StringBuilder();
+        while (input.hasNextBit()) {
+            read.append(input.nextBit());
+        }
+        return read.toString();
+    }
+
+    /**
+     * Bits written to a channel, in pieces from 0 to 64 bits and across
+     * many buffer flushes, read back exactly, with the padding count first
+     * and after whatever the channel already held
+     */
+    @Test
+    public void testChannelRoundTrip() throws IOException {
+        for (int pieces : new int[] {0, 1, 7, 50000}) {
+            Path file = folder.newFile().toPath();
+            FileChannel channel = open(file);
+            channel.write(ByteBuffer.wrap(new byte[] {42, 43}));
+            BitOutputStream output = new BitOutputStream(channel);
+            String written = writeRandomPieces(output, pieces, pieces);
+            output.close();
+            Assert.assertFalse(channel.isOpen());
+
+            byte[] bytes = Files.readAllBytes(file);
+            Assert.assertEquals(42, bytes[0]);
+            Assert.assertEquals(43, bytes[1]);
+            byte[] stream = Arrays.copyOfRange(bytes, 2, bytes.length);
+            Assert.assertEquals(1 + (written.length() + 7) / 8, stream.length);
+            Assert.assertEquals((8 - written.length() % 8) % 8, stream[0]);
+            Assert.assertEquals(written, readAll(stream));
+        }
+    }
+
+    /**
+     * Streaming to a channel holds no more than one buffer, however much is
+     * written
+     */
+    @Test
+    public void testChannelHoldsOneBuffer() throws IOException {
+        BitOutputStream output = new BitOutputStream(open(folder.newFile().toPath()));
+        for (int i = 0; i < 1 << 20; i++) {
+            output.writeBits(i, 24);
+        }
+        output.close();
+        Assert.assertTrue(output.peakBufferedBytes() > 0);
+        Assert.assertTrue(output.peakBufferedBytes() <= 1 << 16);
+    }
+
+    /**
+     * The checksum sees the bytes after the padding count as written, then
+     * the padding count itself
+     */
+    @Test
+    public void testChecksum() throws IOException {
+        Path file = folder.newFile().toPath();
+        CRC32C checksum = new CRC32C();
+        BitOutputStream output = new BitOutputStream(open(file), checksum);
+        writeRandomPieces(output, 30000, 3);
+        output.close();
+
+        byte[] bytes = Files.readAllBytes(file);
+        CRC32C expected = new CRC32C();
+        expected.update(bytes, 1, bytes.length - 1);
+        expected.update(bytes[0]);
+        Assert.assertEquals(expected.getValue(), checksum.getValue());
+    }
+
+    /**
+     * The deprecated PrintStream constructor writes the same bytes as the
+     * channel one, holding all of them until close
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testPrintStreamMatchesChannel() throws IOException {
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        BitOutputStream output = new BitOutputStream(new PrintStream(printed));
+        writeRandomPieces(output, 20000, 4);
+        output.close();
+
+        Path file = folder.newFile().toPath();
+        BitOutputStream streamed = new BitOutputStream(open(file));
+        writeRandomPieces(streamed, 20000, 4);
+        streamed.close();
+        Assert.assertArrayEquals(Files.readAllBytes(file), printed.toByteArray());
+        Assert.assertEquals(printed.size() - 1, output.peakBufferedBytes());
+    }
+
+    /**
+     * Closing twice writes the padding count once, and bad arguments are
+     * refused
+     */
+    @Test
+    public void testCloseTwiceAndBadArguments() throws IOException {
+        Path file = folder.newFile().toPath();
+        BitOutputStream output = new BitOutputStream(open(file));
+        output.write(1);
+        try {
+            output.write(2);
+            Assert.fail("wrote a bit of 2");
+        } catch (IllegalArgumentException expected) {
+            //not a bit
+        }
+        try {
+            output.writeBits(0, Long.SIZE + 1);
+            Assert.fail("wrote more bits than a long holds");
+        } catch (IllegalArgumentException expected) {
+            //too many bits
+        }
+        output.close();
+        output.close();
+        Assert.assertArrayEquals(new byte[] {7, 1}, Files.readAllBytes(file));
+    }
+}
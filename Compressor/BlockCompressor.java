@@ -0,0 +1,346 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Compresses a stream as a sequence of independent blocks, each with its own
+ * Huffman code, so that the blocks can be counted and encoded in parallel.
+ *
+ * The container holds, in order:
+ *   MAGIC (int) and VERSION (byte)
+ *   every block:  BLOCK tag byte, symbol count (int), payload length (int),
+ *                 CRC32C of the code lengths and payload (int),
+ *                 ALPHABET_SIZE code lengths, payload (a BitOutputStream
+ *                 stream: padding count byte followed by the bits)
+ *   END tag byte, block count (int), then for every block its offset from
+ *   the start of the container (long), payload bit count (long) and symbol
+ *   count (int), then the CRC32C of the block count and entries (int)
+ *   offset of the END tag (long)
+ * so that it can be read front to back or, through the index at the end,
+ * one block at a time, and so that damage is caught, block by block, by
+ * the checksums rather than decoded into garbage. A block may instead
+ * start with BLOCK_REUSE and leave out the code lengths, keeping the code
+ * of the block before it; such blocks, and a block count of NO_INDEX with
+ * no index entries, are written only by HuffmanOutputStream. A compressor
+ * made for order-1 coding writes BLOCK_ORDER1 blocks instead, which leave
+ * out the code lengths and whose payload, checksum and index bit count
+ * cover an Order1Compressor encoding of the block, all 8 bits of every
+ * byte counted.
+ */
+public class BlockCompressor {
+
+    //default number of input bytes per block
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    //first bytes of every container, "HUFB", and the format they announce
+    public static final int MAGIC = 0x48554642;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 4 + 1;
+
+    //tag bytes starting each entry of the container
+    public static final int END = 0;
+    public static final int BLOCK = 1;
+    public static final int BLOCK_REUSE = 2;
+    public static final int BLOCK_ORDER1 = 3;
+
+    //block count of a container written without an index
+    public static final int NO_INDEX = -1;
+
+    //bytes in front of the code lengths of a block
+    public static final int BLOCK_HEADER_SIZE = 1 + 4 + 4 + 4;
+
+    //bytes after the index entries: their checksum and the END tag offset
+    public static final int TRAILER_SIZE = 4 + 8;
+
+    private final int blockSize;
+    private final ExecutorService pool;
+    private final boolean order1;
+    private final int window;
+
+    /**
+     * New block compressor using DEFAULT_BLOCK_SIZE blocks on the common
+     * fork/join pool
+     */
+    public BlockCompressor() {
+        this(DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * New block compressor
+     * Pre: blockSize > 0
+     * Post: blocks are encoded on the given pool, with at most twice its
+     *       parallelism (or available processors) blocks in memory at once
+     *
+     * @param blockSize number of input bytes per block
+     * @param pool      where blocks are encoded
+     */
+    public BlockCompressor(int blockSize, ExecutorService pool) {
+        this(blockSize, pool, false);
+    }
+
+    /**
+     * New block compressor, coding every block either with one code
+     * (order-0) or with codes chosen by the byte before each byte (order-1)
+     * Pre: blockSize > 0
+     * Post: as for BlockCompressor(blockSize, pool); with order1 every
+     *       block is written as a BLOCK_ORDER1 block
+     *
+     * @param blockSize number of input bytes per block
+     * @param pool      where blocks are encoded
+     * @param order1    true to write order-1 blocks
+     */
+    public BlockCompressor(int blockSize, ExecutorService pool, boolean order1) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.blockSize = blockSize;
+        this.pool = pool;
+        this.order1 = order1;
+        int parallelism = pool instanceof ForkJoinPool
+                ? ((ForkJoinPool) pool).getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        this.window = 2 * Math.max(parallelism, 1);
+    }
+
+    /**
+     * Compresses everything left in input into the block container
+     * Pre: none
+     * Post: output holds the container and is flushed but not closed
+     *
+     * @param input  the bytes to compress
+     * @param output where the container is written
+     * @throws IOException if reading or writing fails
+     */
+    public void compress(InputStream input, OutputStream output) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(output));
+        Deque<Future<EncodedBlock>> inFlight = new ArrayDeque<>();
+        List<long[]> index = new ArrayList<>();
+        writeHeader(data);
+        long position = HEADER_SIZE;
+
+        boolean more = true;
+        while (more || !inFlight.isEmpty()) {
+            //keep the pool busy while bounding the blocks held in memory
+            while (more && inFlight.size() < window) {
+                byte[] bytes = new byte[blockSize];
+                int count = input.readNBytes(bytes, 0, blockSize);
+                if (count == 0) {
+                    more = false;
+                } else {
+                    inFlight.add(pool.submit(() -> order1
+                            ? encodeOrder1(bytes, 0, count) : encode(bytes, 0, count)));
+                }
+            }
+            if (!inFlight.isEmpty()) {
+                EncodedBlock block = await(inFlight.remove());
+                index.add(new long[] {position, block.bitCount(), block.symbolCount});
+                position += block.writeTo(data);
+            }
+        }
+
+        writeEnd(data, index, position);
+        data.flush();
+    }
+
+    /**
+     * Writes the magic number and version that start every container
+     */
+    public static void writeHeader(DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+    }
+
+    /**
+     * Reads the magic number and version that start every container
+     * Post: input is positioned at the first block
+     *
+     * @throws IOException if input doesn't start with a container of this
+     *                     version
+     */
+    public static void readHeader(DataInputStream input) throws IOException {
+        int magic;
+        try {
+            magic = input.readInt();
+        } catch (EOFException e) {
+            throw new IOException("Too short to be a block container");
+        }
+        checkHeader(magic, input.readUnsignedByte());
+    }
+
+    //post: throws IOException unless magic and version are this format's
+    static void checkHeader(int magic, int version) throws IOException {
+        if (magic != MAGIC) {
+            throw new IOException("Not a block container");
+        }
+        if (version != VERSION) {
+            throw new IOException("Unsupported container version: " + version);
+        }
+    }
+
+    /**
+     * Ends a container: the END tag, the block index and the trailer
+     * Pre: the blocks end at the given position
+     *
+     * @param output   where the container is being written
+     * @param index    offset, bit count and symbol count of every block, or
+     *                 null to leave the index out (a block count of NO_INDEX)
+     * @param position offset of the END tag from the start of the container
+     */
+    public static void writeEnd(DataOutputStream output, List<long[]> index, long position)
+            throws IOException {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(entries);
+        data.writeInt(index == null ? NO_INDEX : index.size());
+        if (index != null) {
+            for (long[] entry : index) {
+                data.writeLong(entry[0]);
+                data.writeLong(entry[1]);
+                data.writeInt((int) entry[2]);
+            }
+        }
+        byte[] bytes = entries.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+
+        output.writeByte(END);
+        output.write(bytes);
+        output.writeInt((int) crc.getValue());
+        output.writeLong(position);
+    }
+
+    /**
+     * Returns the CRC32C of a block's code lengths (null if it has none)
+     * and payload, as stored in its header
+     */
+    public static int checksum(byte[] lengths, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        if (lengths != null) {
+            crc.update(lengths);
+        }
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Encodes count bytes of the given array as one block with its own code
+     * Pre: 0 <= offset, offset + count <= bytes.length
+     * Post: bytes is unchanged
+     *
+     * @param bytes  holds the bytes to encode
+     * @param offset index of the first byte
+     * @param count  number of bytes
+     * @return the encoded block
+     */
+    public static EncodedBlock encode(byte[] bytes, int offset, int count) {
+        FrequencyCounter frequencies = new FrequencyCounter();
+        frequencies.update(bytes, offset, count);
+        return encode(bytes, offset, count, new HuffmanCode(frequencies.getCounts()), false);
+    }
+
+    /**
+     * Encodes count bytes of the given array as one block with the given code
+     * Pre: 0 <= offset, offset + count <= bytes.length; code has a code for
+     *      every byte in the range
+     * Post: bytes is unchanged
+     *
+     * @param bytes  holds the bytes to encode
+     * @param offset index of the first byte
+     * @param count  number of bytes
+     * @param code   the code to encode with
+     * @param reuse  true if the code is the one of the previous block and
+     *               should not be written again
+     * @return the encoded block
+     */
+    public static EncodedBlock encode(byte[] bytes, int offset, int count,
+                                      HuffmanCode code, boolean reuse) {
+        long[] words = code.getCodeWords();
+        byte[] lengths = code.getCodeLengths();
+
+        //size the payload from the code lengths and pack straight into it:
+        //the padding count, then the bits as BitOutputStream would write them
+        long bitCount = 0;
+        for (int i = offset; i < offset + count; i++) {
+            bitCount += lengths[bytes[i] & 0xff];
+        }
+        byte[] payload = new byte[1 + (int) ((bitCount + 7) / 8)];
+        payload[0] = (byte) ((8 - bitCount % 8) % 8);
+        HuffmanCodec.pack(ByteBuffer.wrap(bytes, offset, count),
+                ByteBuffer.wrap(payload, 1, payload.length - 1), words, lengths);
+        return new EncodedBlock(count, reuse ? null : lengths, payload);
+    }
+
+    /**
+     * Encodes count bytes of the given array as one order-1 block
+     * Pre: 0 <= offset, offset + count <= bytes.length
+     * Post: bytes is unchanged
+     *
+     * @return the encoded block, tagged BLOCK_ORDER1
+     */
+    public static EncodedBlock encodeOrder1(byte[] bytes, int offset, int count) {
+        return new EncodedBlock(BLOCK_ORDER1, count, null,
+                Order1Compressor.encode(bytes, offset, count));
+    }
+
+    //post: returns the result of the given task, rethrowing its failure
+    private static EncodedBlock await(Future<EncodedBlock> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding");
+        } catch (ExecutionException e) {
+            throw new IOException("Block encoding failed", e.getCause());
+        }
+    }
+
+    /**
+     * One encoded block: its tag, its code lengths (null if it reuses the
+     * code of the block before it or is an order-1 block), payload and
+     * their checksum
+     */
+    public static class EncodedBlock {
+        public final int tag;
+        public final int symbolCount;
+        public final byte[] lengths;
+        public final byte[] payload;
+        public final int checksum;
+
+        public EncodedBlock(int symbolCount, byte[] lengths, byte[] payload) {
+            this(lengths == null ? BLOCK_REUSE : BLOCK, symbolCount, lengths, payload);
+        }
+
+        public EncodedBlock(int tag, int symbolCount, byte[] lengths, byte[] payload) {
+            this.tag = tag;
+            this.symbolCount = symbolCount;
+            this.lengths = lengths;
+            this.payload = payload;
+            this.checksum = BlockCompressor.checksum(lengths, payload);
+        }
+
+        //returns the number of data bits in the payload; every bit of an
+        //order-1 payload counts
+        public long bitCount() {
+            if (tag == BLOCK_ORDER1) {
+                return 8L * payload.length;
+            }
+            int padding = payload[0];
+            return 8L * (payload.length - 1) - padding;
+        }
+
+        //writes the block to output and returns how many bytes it took
+        public int writeTo(DataOutputStream output) throws IOException {
+            output.writeByte(tag);
+            output.writeInt(symbolCount);
+            output.writeInt(payload.length);
+            output.writeInt(checksum);
+            if (lengths != null) {
+                output.write(lengths);
+            }
+            output.write(payload);
+            int tableSize = lengths == null ? 0 : lengths.length;
+            return BLOCK_HEADER_SIZE + tableSize + payload.length;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+public class BlockCompressorTest {
+
+    /**
+     * Compresses the given bytes in blocks of the given size
+     * @return the container
+     */
+    static byte[] compress(byte[] bytes, int blockSize) throws IOException {
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        new BlockCompressor(blockSize, ForkJoinPool.commonPool())
+                .compress(new ByteArrayInputStream(bytes), container);
+        return container.toByteArray();
+    }
+
+    /**
+     * Returns count bytes taking every value, skewed towards small values
+     * so that the code lengths vary
+     */
+    static byte[] randomBytes(int count, long seed) {
+        Random random = new Random(seed);
+        byte[] bytes = new byte[count];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (random.nextInt(256) & random.nextInt(256));
+        }
+        return bytes;
+    }
+
+    /**
+     * Compresses the given bytes and decompresses the container as a stream
+     */
+    private static void assertStreamRoundTrip(byte[] bytes, int blockSize) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new BlockDecompressor().decompress(
+                new ByteArrayInputStream(compress(bytes, blockSize)), output);
+        Assert.assertArrayEquals(bytes, output.toByteArray());
+    }
+
+    /**
+     * Walks the container front to back, checking every block header and
+     * the index against what was walked
+     * @return the code lengths of every block
+     */
+    private static List<byte[]> walk(byte[] container, int blockSize, int inputSize)
+            throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(container));
+        Assert.assertEquals(BlockCompressor.MAGIC, data.readInt());
+        Assert.assertEquals(BlockCompressor.VERSION, data.readUnsignedByte());
+        long position = BlockCompressor.HEADER_SIZE;
+        List<long[]> walked = new ArrayList<>();
+        List<byte[]> codes = new ArrayList<>();
+        int tag;
+        while ((tag = data.readUnsignedByte()) != BlockCompressor.END) {
+            Assert.assertEquals(BlockCompressor.BLOCK, tag);
+            int symbolCount = data.readInt();
+            byte[] payload = new byte[data.readInt()];
+            int checksum = data.readInt();
+            byte[] lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+            data.readFully(lengths);
+            data.readFully(payload);
+            Assert.assertEquals(BlockCompressor.checksum(lengths, payload), checksum);
+            int expected = Math.min(blockSize, inputSize - walked.size() * blockSize);
+            Assert.assertEquals(expected, symbolCount);
+            long bits = 8L * (payload.length - 1) - payload[0];
+            walked.add(new long[] {position, bits, symbolCount});
+            codes.add(lengths);
+            position += BlockCompressor.BLOCK_HEADER_SIZE + lengths.length + payload.length;
+        }
+        Assert.assertEquals((inputSize + blockSize - 1) / blockSize, walked.size());
+        Assert.assertEquals(walked.size(), data.readInt());
+        for (long[] entry : walked) {
+            Assert.assertEquals(entry[0], data.readLong());
+            Assert.assertEquals(entry[1], data.readLong());
+            Assert.assertEquals(entry[2], data.readInt());
+        }
+        data.readInt(); //index checksum
+        Assert.assertEquals(position, data.readLong());
+        Assert.assertEquals(-1, data.read());
+        return codes;
+    }
+
+    /**
+     * The container is the header, one block per blockSize bytes with the
+     * last one short, then an index whose entries point at the blocks; an
+     * empty input has no blocks and an empty index
+     */
+    @Test
+    public void testContainerLayout() throws IOException {
+        walk(compress(new byte[0], 64), 64, 0);
+        byte[] bytes = randomBytes(10000, 1);
+        walk(compress(bytes, 3000), 3000, 10000);
+        walk(compress(bytes, 10000), 10000, 10000);
+        walk(compress(bytes, 1), 1, 10000);
+    }
+
+    /**
+     * Every block is coded with a code of its own bytes, so a block of few
+     * distinct bytes gets short codes for those alone whatever the blocks
+     * around it hold
+     */
+    @Test
+    public void testCodePerBlock() throws IOException {
+        byte[] bytes = randomBytes(12000, 2);
+        for (int i = 4000; i < 8000; i++) {
+            bytes[i] = (byte) ("abcd".charAt(i % 4));
+        }
+        List<byte[]> codes = walk(compress(bytes, 4000), 4000, 12000);
+        byte[] expected = new byte[HuffmanCode.ALPHABET_SIZE];
+        Arrays.fill(expected, 'a', 'e', (byte) 2);
+        Assert.assertArrayEquals(expected, codes.get(1));
+        for (int block : new int[] {0, 2}) {
+            int coded = 0;
+            for (byte length : codes.get(block)) {
+                coded += length > 0 ? 1 : 0;
+            }
+            Assert.assertTrue(coded > 100);
+        }
+        assertStreamRoundTrip(bytes, 4000);
+    }
+
+    /**
+     * Blocks encoded in parallel, many more than are held in memory at
+     * once, are written in input order: the container is the same byte
+     * for byte as one encoded on a single thread
+     */
+    @Test
+    public void testParallelMatchesSingleThread() throws IOException {
+        byte[] bytes = randomBytes(50000, 3);
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+            new BlockCompressor(100, single).compress(new ByteArrayInputStream(bytes), sequential);
+            ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+            new BlockCompressor(100, pool).compress(new ByteArrayInputStream(bytes), parallel);
+            Assert.assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+        } finally {
+            single.shutdown();
+            pool.shutdown();
+        }
+        assertStreamRoundTrip(bytes, 100);
+    }
+
+    /**
+     * Block sizes that do and don't divide the input give the same bytes,
+     * and a block size of 0 is refused
+     */
+    @Test
+    public void testBlockBoundaries() throws IOException {
+        byte[] bytes = randomBytes(4096, 3);
+        for (int blockSize : new int[] {1, 7, 1024, 4096, 4097}) {
+            assertStreamRoundTrip(bytes, blockSize);
+        }
+        try {
+            new BlockCompressor(0, ForkJoinPool.commonPool());
+            Assert.fail("made blocks of no bytes");
+        } catch (IllegalArgumentException expected) {
+            //blocks must hold something
+        }
+    }
+
+    /**
+     * A block encoded on its own decodes back, its bit count matching the
+     * code lengths of its bytes
+     */
+    @Test
+    public void testEncodeBlock() throws IOException {
+        byte[] bytes = randomBytes(5000, 4);
+        BlockCompressor.EncodedBlock block = BlockCompressor.encode(bytes, 100, 4000);
+        HuffmanCode code = new HuffmanCode(block.lengths);
+
+        long bits = 0;
+        for (int i = 100; i < 4100; i++) {
+            bits += block.lengths[bytes[i] & 0xff];
+        }
+        Assert.assertEquals(bits, block.bitCount());
+        Assert.assertEquals(1 + (bits + 7) / 8, block.payload.length);
+        Assert.assertArrayEquals(Arrays.copyOfRange(bytes, 100, 4100),
+                BlockDecompressor.decodeBlock(code, block.payload, 4000));
+    }
+}
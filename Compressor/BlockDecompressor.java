@@ -0,0 +1,393 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads the block container written by BlockCompressor, either front to back
+ * from a stream or, through the block index at the end of a file, decoding
+ * blocks in parallel or only the blocks covering a byte range.
+ */
+public class BlockDecompressor {
+
+    //most decoded blocks held in memory by decompressRange
+    private static final int WINDOW = 2 * Runtime.getRuntime().availableProcessors();
+
+    //bytes read at a time when verifying
+    private static final int VERIFY_BUFFER = 1 << 16;
+
+    private final ExecutorService pool;
+
+    /**
+     * New block decompressor decoding on the common fork/join pool
+     */
+    public BlockDecompressor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * New block decompressor
+     * @param pool where blocks are decoded
+     */
+    public BlockDecompressor(ExecutorService pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Decompresses a whole container, reading it front to back
+     * Pre: input is positioned at the start of a container
+     * Post: output holds the original bytes and is flushed but not closed
+     *
+     * @param input  the container
+     * @param output where the original bytes are written
+     * @throws IOException if reading or writing fails or the container is
+     *                     malformed
+     */
+    public void decompress(InputStream input, OutputStream output) throws IOException {
+        new HuffmanInputStream(new BufferedInputStream(input)).transferTo(output);
+        output.flush();
+    }
+
+    /**
+     * Decompresses a whole container file, decoding its blocks in parallel
+     * and writing each straight to its place in the output file
+     * Pre: input is a container file
+     * Post: output holds the original bytes
+     *
+     * @param input  the container file
+     * @param output the file to create or overwrite
+     * @throws IOException if reading or writing fails or the container is
+     *                     malformed
+     */
+    public void decompress(Path input, Path output) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            BlockIndex index = BlockIndex.read(in);
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < index.size(); i++) {
+                int block = i;
+                tasks.add(() -> {
+                    byte[] bytes = readBlock(in, index, block);
+                    writeFully(out, ByteBuffer.wrap(bytes), index.start(block));
+                    return null;
+                });
+            }
+            runAll(tasks);
+        }
+    }
+
+    /**
+     * Decompresses only the original bytes from index from (inclusive) to
+     * index to (exclusive), decoding just the blocks that cover them
+     * Pre: input is a container file; 0 <= from <= to <= original size
+     * Post: output holds the requested bytes and is flushed but not closed
+     *
+     * @param input  the container file
+     * @param from   index of the first original byte wanted
+     * @param to     index just past the last original byte wanted
+     * @param output where the requested bytes are written
+     * @throws IOException if reading or writing fails or the container is
+     *                     malformed
+     */
+    public void decompressRange(Path input, long from, long to, OutputStream output)
+            throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            BlockIndex index = BlockIndex.read(in);
+            if (from < 0 || to < from || to > index.originalSize()) {
+                throw new IllegalArgumentException("Illegal range: " + from + " to " + to);
+            }
+            if (from == to) {
+                return;
+            }
+            int first = index.blockAt(from);
+            int last = index.blockAt(to - 1);
+            //decode ahead of the writer, a bounded number of blocks at a time
+            Deque<Future<byte[]>> blocks = new ArrayDeque<>();
+            int next = first;
+            for (int i = first; i <= last; i++) {
+                while (next <= last && blocks.size() < WINDOW) {
+                    int block = next++;
+                    blocks.add(pool.submit(() -> readBlock(in, index, block)));
+                }
+                byte[] bytes = await(blocks.remove());
+                long start = index.start(i);
+                int low = (int) (Math.max(from, start) - start);
+                int high = (int) (Math.min(to, start + bytes.length) - start);
+                output.write(bytes, low, high - low);
+            }
+            output.flush();
+        }
+    }
+
+    /**
+     * Checks a whole container without decoding it, reading it front to back
+     * once: the header, the checksum of every block and, unless the
+     * container was streamed, the index against the blocks actually found
+     * Pre: input is positioned at the start of a container
+     * Post: input has been read at least to the end of the container
+     *
+     * @param input the container
+     * @return the number of original bytes the container holds
+     * @throws IOException if reading fails or the container is damaged, the
+     *                     message naming the first problem found
+     */
+    public long verify(InputStream input) throws IOException {
+        return verify(new DataInputStream(new BufferedInputStream(input, VERIFY_BUFFER)));
+    }
+
+    /**
+     * Checks a whole container file without decoding it, as verify(InputStream)
+     * does, and checks that nothing follows the container
+     *
+     * @param input the container file
+     * @return the number of original bytes the container holds
+     * @throws IOException if reading fails or the container is damaged
+     */
+    public long verify(Path input) throws IOException {
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(input), VERIFY_BUFFER))) {
+            long size = verify(data);
+            if (data.read() != -1) {
+                throw new IOException("Unexpected bytes after the container");
+            }
+            return size;
+        }
+    }
+
+    //post: checks the container read from input as verify describes
+    private static long verify(DataInputStream input) throws IOException {
+        byte[] scratch = new byte[VERIFY_BUFFER];
+        CRC32C crc = new CRC32C();
+        List<long[]> blocks = new ArrayList<>();
+        long originalSize = 0;
+        boolean haveCode = false;
+
+        BlockCompressor.readHeader(input);
+        long position = BlockCompressor.HEADER_SIZE;
+        try {
+            int tag;
+            while ((tag = input.readUnsignedByte()) != BlockCompressor.END) {
+                int block = blocks.size();
+                if (tag != BlockCompressor.BLOCK && tag != BlockCompressor.BLOCK_REUSE
+                        && tag != BlockCompressor.BLOCK_ORDER1) {
+                    throw new IOException("Unknown tag " + tag + " at offset " + position);
+                }
+                int symbolCount = input.readInt();
+                int payloadLength = input.readInt();
+                int checksum = input.readInt();
+                if (symbolCount < 0 || payloadLength < 1) {
+                    throw new IOException("Block " + block + " has a malformed header");
+                }
+                crc.reset();
+                int tableSize = 0;
+                if (tag == BlockCompressor.BLOCK) {
+                    tableSize = HuffmanCode.ALPHABET_SIZE;
+                    input.readFully(scratch, 0, tableSize);
+                    crc.update(scratch, 0, tableSize);
+                    haveCode = true;
+                } else if (tag == BlockCompressor.BLOCK_REUSE && !haveCode) {
+                    throw new IOException("First block has no code to reuse");
+                }
+                //the padding count, or the first byte of an order-1 payload
+                int padding = input.readUnsignedByte();
+                crc.update(padding);
+                for (int left = payloadLength - 1; left > 0; ) {
+                    int piece = Math.min(left, scratch.length);
+                    input.readFully(scratch, 0, piece);
+                    crc.update(scratch, 0, piece);
+                    left -= piece;
+                }
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Block " + block + " is corrupt");
+                }
+                long bitCount = 8L * payloadLength;
+                if (tag != BlockCompressor.BLOCK_ORDER1) {
+                    if (padding >= 8) {
+                        throw new IOException("Block " + block + " has a malformed payload");
+                    }
+                    bitCount = 8L * (payloadLength - 1) - padding;
+                }
+                blocks.add(new long[] {position, bitCount, symbolCount});
+                originalSize += symbolCount;
+                position += BlockCompressor.BLOCK_HEADER_SIZE + tableSize + payloadLength;
+            }
+
+            //the index, whose checksum covers the block count and entries
+            crc.reset();
+            ByteBuffer entry = ByteBuffer.wrap(scratch, 0, BlockIndex.ENTRY_SIZE);
+            input.readFully(scratch, 0, 4);
+            crc.update(scratch, 0, 4);
+            int count = entry.getInt(0);
+            if (count != BlockCompressor.NO_INDEX && count != blocks.size()) {
+                throw new IOException("Block index lists " + count + " blocks but "
+                        + blocks.size() + " were found");
+            }
+            for (int i = 0; i < count; i++) {
+                input.readFully(scratch, 0, BlockIndex.ENTRY_SIZE);
+                crc.update(scratch, 0, BlockIndex.ENTRY_SIZE);
+                long[] found = blocks.get(i);
+                if (entry.getLong(0) != found[0] || entry.getLong(8) != found[1]
+                        || entry.getInt(16) != found[2]) {
+                    throw new IOException("Block index entry " + i + " does not match its block");
+                }
+            }
+            if (input.readInt() != (int) crc.getValue()) {
+                throw new IOException("Block index is corrupt");
+            }
+            if (input.readLong() != position) {
+                throw new IOException("Trailer does not point at the END tag");
+            }
+        } catch (EOFException e) {
+            throw new EOFException("Container ends early");
+        }
+        return originalSize;
+    }
+
+    //post: reads and decodes the given block of the container
+    private static byte[] readBlock(FileChannel in, BlockIndex index, int block)
+            throws IOException {
+        long position = index.offset(block);
+        ByteBuffer header = ByteBuffer.allocate(BlockCompressor.BLOCK_HEADER_SIZE);
+        readFully(in, header, position);
+        header.flip();
+        int tag = header.get();
+        if (tag != BlockCompressor.BLOCK && tag != BlockCompressor.BLOCK_ORDER1) {
+            throw new IOException("Block " + block + " is missing its tag");
+        }
+        boolean order1 = tag == BlockCompressor.BLOCK_ORDER1;
+        int symbolCount = header.getInt();
+        int payloadLength = header.getInt();
+        int checksum = header.getInt();
+        long bitCount = index.bitCount(block);
+        if (symbolCount != index.symbolCount(block) || payloadLength < 1
+                || (order1 ? 8L * payloadLength != bitCount
+                           : 8L * (payloadLength - 1) < bitCount)) {
+            throw new IOException("Block " + block + " does not match the index");
+        }
+        position += header.capacity();
+        byte[] lengths = null;
+        if (!order1) {
+            lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+            readFully(in, ByteBuffer.wrap(lengths), position);
+            position += lengths.length;
+        }
+        byte[] payload = new byte[payloadLength];
+        readFully(in, ByteBuffer.wrap(payload), position);
+        if (BlockCompressor.checksum(lengths, payload) != checksum) {
+            throw new IOException("Block " + block + " is corrupt");
+        }
+        if (order1) {
+            return decodeOrder1Block(payload, symbolCount);
+        }
+        return decodeBlock(CodeCache.shared().get(lengths), payload, symbolCount);
+    }
+
+    //post: fills buffer from the channel starting at the given position
+    static void readFully(FileChannel in, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = in.read(buffer, position);
+            if (count < 0) {
+                throw new EOFException("Container ends early");
+            }
+            position += count;
+        }
+    }
+
+    //post: writes all of buffer to the channel starting at the given position
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+    }
+
+    //post: runs the tasks on the pool and waits for all of them
+    private void runAll(List<Callable<Void>> tasks) throws IOException {
+        List<Future<Void>> results = new ArrayList<>();
+        for (Callable<Void> task : tasks) {
+            results.add(pool.submit(task));
+        }
+        for (Future<Void> result : results) {
+            await(result);
+        }
+    }
+
+    //post: returns the result of the given task, rethrowing its failure
+    private static <T> T await(Future<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Block decoding failed", e.getCause());
+        }
+    }
+
+    /**
+     * Decodes one block payload
+     * Pre: payload was encoded with code
+     * Post: returns the symbolCount original bytes
+     *
+     * @param code        the code of the block
+     * @param payload     the padding count byte followed by the bits
+     * @param symbolCount how many bytes the block holds
+     * @return the original bytes
+     * @throws IOException if the payload holds fewer symbols than expected
+     */
+    public static byte[] decodeBlock(HuffmanCode code, byte[] payload, int symbolCount)
+            throws IOException {
+        byte[] bytes = new byte[symbolCount];
+        decodeBlock(code, payload, bytes, 0, symbolCount);
+        return bytes;
+    }
+
+    /**
+     * Decodes one BLOCK_ORDER1 payload
+     * Pre: payload was written by Order1Compressor.encode
+     * Post: returns the symbolCount original bytes
+     *
+     * @throws IOException if the payload is malformed or doesn't hold
+     *                     symbolCount bytes
+     */
+    public static byte[] decodeOrder1Block(byte[] payload, int symbolCount)
+            throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Order1Compressor.decode(payload);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed order-1 block", e);
+        }
+        if (bytes.length != symbolCount) {
+            throw new IOException("Order-1 block holds " + bytes.length + " of "
+                    + symbolCount + " symbols");
+        }
+        return bytes;
+    }
+
+    /**
+     * Decodes one block payload into the given array
+     * Pre: payload was encoded with code; output has room for symbolCount
+     *      bytes from offset
+     * Post: output[offset] onward holds the original bytes
+     *
+     * @throws IOException if the payload holds fewer symbols than expected
+     */
+    public static void decodeBlock(HuffmanCode code, byte[] payload, byte[] output,
+                                   int offset, int symbolCount) throws IOException {
+        BitInputStream bits = new BitInputStream(new ByteArrayInputStream(payload));
+        int count = code.decode(bits, output, offset, symbolCount);
+        if (count != symbolCount) {
+            throw new IOException("Block ended after " + count + " of "
+                    + symbolCount + " symbols");
+        }
+    }
+}
@@ -0,0 +1,270 @@
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class BlockDecompressorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Compresses the given bytes in blocks of the given size to a file
+     * @return the container file
+     */
+    private Path compressToFile(byte[] bytes, int blockSize) throws IOException {
+        Path container = folder.newFile().toPath();
+        Files.write(container, BlockCompressorTest.compress(bytes, blockSize));
+        return container;
+    }
+
+    /**
+     * Decompresses the container file in parallel
+     * @return the original bytes
+     */
+    private byte[] decompressFile(Path container) throws IOException {
+        File output = folder.newFile();
+        new BlockDecompressor().decompress(container, output.toPath());
+        return Files.readAllBytes(output.toPath());
+    }
+
+    /**
+     * Decompresses the original bytes from index from to index to
+     */
+    private static byte[] range(Path container, long from, long to) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new BlockDecompressor().decompressRange(container, from, to, output);
+        return output.toByteArray();
+    }
+
+    /**
+     * The index maps original positions to blocks, the last block short,
+     * and an empty container has no blocks and only an empty range
+     */
+    @Test
+    public void testIndex() throws IOException {
+        Path container = compressToFile(BlockCompressorTest.randomBytes(1000, 5), 300);
+        try (FileChannel in = FileChannel.open(container)) {
+            BlockIndex index = BlockIndex.read(in);
+            Assert.assertEquals(4, index.size());
+            Assert.assertEquals(1000, index.originalSize());
+            Assert.assertEquals(100, index.symbolCount(3));
+            Assert.assertEquals(900, index.start(3));
+            Assert.assertEquals(BlockCompressor.HEADER_SIZE, index.offset(0));
+            Assert.assertEquals(0, index.blockAt(0));
+            Assert.assertEquals(0, index.blockAt(299));
+            Assert.assertEquals(1, index.blockAt(300));
+            Assert.assertEquals(3, index.blockAt(999));
+        }
+
+        Path empty = compressToFile(new byte[0], 64);
+        Assert.assertEquals(0, decompressFile(empty).length);
+        Assert.assertEquals(0, range(empty, 0, 0).length);
+    }
+
+    /**
+     * A range decodes only the blocks under it, found through the index:
+     * with the payload of the first block damaged, ranges in later blocks
+     * still decode and only a range touching the first block fails
+     */
+    @Test
+    public void testRangeReadsOnlyItsBlocks() throws IOException {
+        byte[] bytes = BlockCompressorTest.randomBytes(4000, 8);
+        Path intact = compressToFile(bytes, 1000);
+        long firstPayload = BlockCompressor.HEADER_SIZE + BlockCompressor.BLOCK_HEADER_SIZE
+                + HuffmanCode.ALPHABET_SIZE + 10;
+        Path container = damage(intact, firstPayload);
+
+        Assert.assertArrayEquals(Arrays.copyOfRange(bytes, 1000, 4000),
+                range(container, 1000, 4000));
+        Assert.assertArrayEquals(Arrays.copyOfRange(bytes, 1500, 2500),
+                range(container, 1500, 2500));
+        try {
+            range(container, 999, 1001);
+            Assert.fail("decoded a range over a damaged block");
+        } catch (IOException expected) {
+            //the first block doesn't match its checksum
+        }
+    }
+
+    /**
+     * Decoding the blocks in parallel on pools of any size, including more
+     * threads than blocks, writes the same file as decoding front to back
+     */
+    @Test
+    public void testParallelMatchesStream() throws IOException {
+        byte[] bytes = BlockCompressorTest.randomBytes(30000, 9);
+        Path container = compressToFile(bytes, 700);
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        new BlockDecompressor().decompress(
+                new ByteArrayInputStream(Files.readAllBytes(container)), streamed);
+        Assert.assertArrayEquals(bytes, streamed.toByteArray());
+        for (int threads : new int[] {1, 3, 64}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                File output = folder.newFile();
+                new BlockDecompressor(pool).decompress(container, output.toPath());
+                Assert.assertArrayEquals(bytes, Files.readAllBytes(output.toPath()));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * A container streamed without an index can't be decoded by range, and
+     * says why
+     */
+    @Test
+    public void testRangeNeedsIndex() throws IOException {
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        try (HuffmanOutputStream output = new HuffmanOutputStream(streamed)) {
+            output.write(BlockCompressorTest.randomBytes(3000, 11));
+        }
+        Path container = folder.newFile().toPath();
+        Files.write(container, streamed.toByteArray());
+        try {
+            range(container, 0, 10);
+            Assert.fail("decoded a range without an index");
+        } catch (IOException expected) {
+            Assert.assertEquals("Container was streamed without a block index",
+                    expected.getMessage());
+        }
+    }
+
+    /**
+     * Ranges inside one block, across blocks, on block boundaries, empty
+     * and whole give exactly the bytes asked for
+     */
+    @Test
+    public void testRanges() throws IOException {
+        byte[] bytes = BlockCompressorTest.randomBytes(5000, 6);
+        Path container = compressToFile(bytes, 256);
+        long[][] ranges = {{0, 5000}, {0, 1}, {4999, 5000}, {10, 20}, {255, 257},
+                           {256, 512}, {100, 4900}, {3000, 3000}};
+        for (long[] range : ranges) {
+            Assert.assertArrayEquals(Arrays.copyOfRange(bytes, (int) range[0], (int) range[1]),
+                    range(container, range[0], range[1]));
+        }
+
+        Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            int from = random.nextInt(bytes.length + 1);
+            int to = from + random.nextInt(bytes.length - from + 1);
+            Assert.assertArrayEquals(Arrays.copyOfRange(bytes, from, to),
+                    range(container, from, to));
+        }
+    }
+
+    /**
+     * A range outside the original bytes is refused
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testRangePastEnd() throws IOException {
+        range(compressToFile(new byte[10], 4), 5, 11);
+    }
+
+    /**
+     * Returns the container file with the given byte changed
+     */
+    private Path damage(Path container, long position) throws IOException {
+        byte[] bytes = Files.readAllBytes(container);
+        bytes[(int) position] ^= 0x10;
+        Path damaged = folder.newFile().toPath();
+        Files.write(damaged, bytes);
+        return damaged;
+    }
+
+    /**
+     * An intact container verifies, from a file or a stream, giving its
+     * original size
+     */
+    @Test
+    public void testVerifyIntact() throws IOException {
+        Path container = compressToFile(BlockCompressorTest.randomBytes(5000, 10), 256);
+        Assert.assertEquals(5000, new BlockDecompressor().verify(container));
+        Assert.assertEquals(5000, HuffmanStreams.verify(Files.newInputStream(container)));
+        Assert.assertEquals(0, new BlockDecompressor().verify(compressToFile(new byte[0], 64)));
+    }
+
+    /**
+     * A flipped byte in the middle of a block payload is caught by verify
+     * and by decompressing
+     */
+    @Test
+    public void testVerifyRejectsFlippedPayloadByte() throws IOException {
+        Path container = compressToFile(BlockCompressorTest.randomBytes(5000, 11), 256);
+        long payload = BlockCompressor.HEADER_SIZE + BlockCompressor.BLOCK_HEADER_SIZE
+                + HuffmanCode.ALPHABET_SIZE + 1;
+        Path damaged = damage(container, payload + 10);
+        try {
+            new BlockDecompressor().verify(damaged);
+            Assert.fail("verify accepted a damaged payload");
+        } catch (IOException expected) {
+            //the block checksum doesn't match
+        }
+        try {
+            decompressFile(damaged);
+            Assert.fail("decompress accepted a damaged payload");
+        } catch (IOException expected) {
+            //the block checksum doesn't match
+        }
+    }
+
+    /**
+     * A damaged index entry is caught by verify and by reading a range
+     */
+    @Test
+    public void testVerifyRejectsDamagedIndex() throws IOException {
+        Path container = compressToFile(BlockCompressorTest.randomBytes(5000, 12), 256);
+        long lastEntry = Files.size(container) - BlockCompressor.TRAILER_SIZE - 1;
+        Path damaged = damage(container, lastEntry);
+        try {
+            new BlockDecompressor().verify(damaged);
+            Assert.fail("verify accepted a damaged index");
+        } catch (IOException expected) {
+            //the index checksum doesn't match
+        }
+        try {
+            range(damaged, 0, 10);
+            Assert.fail("decompressRange accepted a damaged index");
+        } catch (IOException expected) {
+            //the index checksum doesn't match
+        }
+    }
+
+    /**
+     * A streamed container, which has no index, verifies, and a flipped
+     * payload byte in it is caught
+     */
+    @Test
+    public void testVerifyStreamed() throws IOException {
+        byte[] bytes = BlockCompressorTest.randomBytes(5000, 13);
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        HuffmanOutputStream output = new HuffmanOutputStream(container, 256);
+        output.write(bytes);
+        output.close();
+        byte[] streamed = container.toByteArray();
+        Assert.assertEquals(5000, HuffmanStreams.verify(new ByteArrayInputStream(streamed)));
+
+        streamed[BlockCompressor.HEADER_SIZE + BlockCompressor.BLOCK_HEADER_SIZE
+                + HuffmanCode.ALPHABET_SIZE + 20] ^= 0x10;
+        try {
+            HuffmanStreams.verify(new ByteArrayInputStream(streamed));
+            Assert.fail("verify accepted a damaged payload");
+        } catch (IOException expected) {
+            //the block checksum doesn't match
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * The block index stored at the end of a BlockCompressor container: where
+ * each block starts in the container and in the original bytes, how many
+ * payload bits it has and how many bytes it decodes to.
+ */
+public class BlockIndex {
+
+    //bytes per block in the index: offset, bit count and symbol count
+    public static final int ENTRY_SIZE = 8 + 8 + 4;
+
+    private final long[] offsets;
+    private final long[] bitCounts;
+    private final int[] symbolCounts;
+    private final long[] starts;   //index of the first original byte of each block
+
+    private BlockIndex(long[] offsets, long[] bitCounts, int[] symbolCounts) {
+        this.offsets = offsets;
+        this.bitCounts = bitCounts;
+        this.symbolCounts = symbolCounts;
+        this.starts = new long[symbolCounts.length + 1];
+        for (int i = 0; i < symbolCounts.length; i++) {
+            starts[i + 1] = starts[i] + symbolCounts[i];
+        }
+    }
+
+    /**
+     * Reads the index of the container in the given file
+     * Pre: none
+     * Post: the channel position is unchanged
+     *
+     * @param in the container file
+     * @return the index
+     * @throws IOException if the file is not a container
+     */
+    public static BlockIndex read(FileChannel in) throws IOException {
+        long size = in.size();
+        if (size < BlockCompressor.HEADER_SIZE + 5 + BlockCompressor.TRAILER_SIZE) {
+            throw new IOException("Too short to be a block container");
+        }
+        ByteBuffer header = ByteBuffer.allocate(BlockCompressor.HEADER_SIZE);
+        BlockDecompressor.readFully(in, header, 0);
+        BlockCompressor.checkHeader(header.getInt(0), header.get(4) & 0xff);
+
+        ByteBuffer trailer = ByteBuffer.allocate(BlockCompressor.TRAILER_SIZE);
+        BlockDecompressor.readFully(in, trailer, size - BlockCompressor.TRAILER_SIZE);
+        int checksum = trailer.getInt(0);
+        long end = trailer.getLong(4);
+        if (end < BlockCompressor.HEADER_SIZE
+                || end > size - BlockCompressor.TRAILER_SIZE - 5) {
+            throw new IOException("Block index is out of range");
+        }
+
+        ByteBuffer head = ByteBuffer.allocate(5);
+        BlockDecompressor.readFully(in, head, end);
+        head.flip();
+        int tag = head.get();
+        int count = head.getInt();
+        if (tag == BlockCompressor.END && count == BlockCompressor.NO_INDEX) {
+            throw new IOException("Container was streamed without a block index");
+        }
+        if (tag != BlockCompressor.END || count < 0
+                || end + 5 + (long) count * ENTRY_SIZE != size - BlockCompressor.TRAILER_SIZE) {
+            throw new IOException("Block index is malformed");
+        }
+
+        ByteBuffer entries = ByteBuffer.allocate(count * ENTRY_SIZE);
+        BlockDecompressor.readFully(in, entries, end + 5);
+        CRC32C crc = new CRC32C();
+        crc.update(head.flip().position(1));
+        crc.update(entries.flip());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Block index is corrupt");
+        }
+        entries.flip();
+        long[] offsets = new long[count];
+        long[] bitCounts = new long[count];
+        int[] symbolCounts = new int[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = entries.getLong();
+            bitCounts[i] = entries.getLong();
+            symbolCounts[i] = entries.getInt();
+        }
+        return new BlockIndex(offsets, bitCounts, symbolCounts);
+    }
+
+    //returns the number of blocks
+    public int size() {
+        return offsets.length;
+    }
+
+    //returns where the given block starts in the container
+    public long offset(int block) {
+        return offsets[block];
+    }
+
+    //returns the number of payload bits of the given block
+    public long bitCount(int block) {
+        return bitCounts[block];
+    }
+
+    //returns the number of original bytes in the given block
+    public int symbolCount(int block) {
+        return symbolCounts[block];
+    }
+
+    //returns the index of the first original byte of the given block
+    public long start(int block) {
+        return starts[block];
+    }
+
+    //returns the total number of original bytes
+    public long originalSize() {
+        return starts[starts.length - 1];
+    }
+
+    /**
+     * Finds the block holding the given original byte
+     * Pre: 0 <= position < originalSize()
+     *
+     * @param position index of an original byte
+     * @return the block holding it
+     */
+    public int blockAt(long position) {
+        int low = 0;
+        int high = offsets.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently used codes, keyed by their code lengths, so that files and
+ * blocks sharing a table reuse one HuffmanCode, tree and decoding table
+ * included, instead of rebuilding it each time. The least recently used
+ * code is dropped once the cache is full. Safe for use by many threads at
+ * once; the codes it hands out may be shared between them.
+ */
+public class CodeCache {
+
+    //codes kept by the shared cache
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final CodeCache SHARED = new CodeCache(DEFAULT_CAPACITY);
+
+    private final int capacity;
+    private final Map<ByteBuffer, HuffmanCode> codes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * New cache holding at most capacity codes
+     * Pre: capacity > 0
+     */
+    public CodeCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.codes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, HuffmanCode> eldest) {
+                if (size() > CodeCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache used by the decompressors
+     */
+    public static CodeCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the code with the given lengths, building it only if it isn't
+     * cached
+     * Pre: lengths holds ALPHABET_SIZE code lengths forming a prefix code
+     * Post: lengths is unchanged and not kept
+     *
+     * @param lengths the code length of each symbol
+     * @return the code
+     */
+    public HuffmanCode get(byte[] lengths) {
+        ByteBuffer key = ByteBuffer.wrap(lengths);
+        synchronized (this) {
+            HuffmanCode code = codes.get(key);
+            if (code != null) {
+                hits++;
+                return code;
+            }
+            misses++;
+        }
+        //build outside the lock; if two threads race, both codes are equal
+        HuffmanCode code = new HuffmanCode(lengths);
+        synchronized (this) {
+            HuffmanCode cached = codes.putIfAbsent(ByteBuffer.wrap(lengths.clone()), code);
+            return cached == null ? code : cached;
+        }
+    }
+
+    /**
+     * Reads a code written by HuffmanCode.writeHeader, taking it from the
+     * cache if it is there
+     * Post: input is positioned just past the header
+     *
+     * @throws IOException if reading fails
+     */
+    public HuffmanCode readHeader(InputStream input) throws IOException {
+        byte[] lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+        new DataInputStream(input).readFully(lengths);
+        return get(lengths);
+    }
+
+    //returns how many lookups found their code cached
+    public synchronized long hits() {
+        return hits;
+    }
+
+    //returns how many lookups had to build their code
+    public synchronized long misses() {
+        return misses;
+    }
+
+    //returns how many codes were dropped to make room
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    //returns the fraction of lookups that found their code cached
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    //returns the number of codes held
+    public synchronized int size() {
+        return codes.size();
+    }
+
+    //post: the cache is empty and its statistics are zero
+    public synchronized void clear() {
+        codes.clear();
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CodeCache[" + codes.size() + "/" + capacity + " codes, " + hits
+                + " hits, " + misses + " misses, " + evictions + " evictions]";
+    }
+}
@@ -0,0 +1,136 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CodeCacheTest {
+
+    /**
+     * Returns the lengths of a complete code over symbols 0 to n, symbol s
+     * taking s + 1 bits and the last two n bits, so every n gives
+     * different lengths
+     */
+    private static byte[] lengths(int n) {
+        byte[] lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+        for (int symbol = 0; symbol <= n; symbol++) {
+            lengths[symbol] = (byte) Math.min(symbol + 1, n);
+        }
+        return lengths;
+    }
+
+    /**
+     * The same lengths give the same code, counted as a hit; new lengths
+     * build a code, counted as a miss
+     */
+    @Test
+    public void testHitsAndMisses() {
+        CodeCache cache = new CodeCache(4);
+        HuffmanCode first = cache.get(lengths(5));
+        Assert.assertArrayEquals(lengths(5), first.getCodeLengths());
+        Assert.assertSame(first, cache.get(lengths(5)));
+        Assert.assertNotSame(first, cache.get(lengths(6)));
+        Assert.assertEquals(1, cache.hits());
+        Assert.assertEquals(2, cache.misses());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1.0 / 3, cache.hitRate(), 1e-12);
+        Assert.assertEquals("CodeCache[2/4 codes, 1 hits, 2 misses, 0 evictions]",
+                cache.toString());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.hitRate(), 0);
+        Assert.assertNotSame(first, cache.get(lengths(5)));
+    }
+
+    /**
+     * Once full, the cache drops the code used least recently, not the one
+     * added first
+     */
+    @Test
+    public void testLeastRecentlyUsedDropped() {
+        CodeCache cache = new CodeCache(3);
+        HuffmanCode two = cache.get(lengths(2));
+        HuffmanCode three = cache.get(lengths(3));
+        HuffmanCode four = cache.get(lengths(4));
+        Assert.assertSame(two, cache.get(lengths(2)));
+        cache.get(lengths(5));
+        Assert.assertEquals(1, cache.evictions());
+        Assert.assertEquals(3, cache.size());
+
+        Assert.assertSame(two, cache.get(lengths(2)));
+        Assert.assertSame(four, cache.get(lengths(4)));
+        Assert.assertNotSame(three, cache.get(lengths(3)));
+        Assert.assertEquals(2, cache.evictions());
+    }
+
+    /**
+     * The cache keeps its own copy of the lengths, so changing the array
+     * passed in afterwards doesn't change which code it finds
+     */
+    @Test
+    public void testKeyIsCopied() throws IOException {
+        CodeCache cache = new CodeCache(4);
+        byte[] lengths = lengths(4);
+        HuffmanCode code = cache.get(lengths);
+        lengths[0] = 0;
+        lengths[1] = 0;
+        Assert.assertSame(code, cache.get(lengths(4)));
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        code.writeHeader(header);
+        Assert.assertSame(code, cache.readHeader(new ByteArrayInputStream(header.toByteArray())));
+        Assert.assertEquals(2, cache.hits());
+    }
+
+    /**
+     * Threads asking for the same lengths at once all get a working code,
+     * and the cache ends up holding one
+     */
+    @Test
+    public void testConcurrentGets() throws Exception {
+        CodeCache cache = new CodeCache(8);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<HuffmanCode>> tasks = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int n = 2 + i % 3;
+                tasks.add(() -> cache.get(lengths(n)));
+            }
+            for (Future<HuffmanCode> result : pool.invokeAll(tasks)) {
+                byte[] lengths = result.get().getCodeLengths();
+                Assert.assertSame(cache.get(lengths), cache.get(lengths));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(0, cache.evictions());
+    }
+
+    /**
+     * Decompressing blocks that share a table builds the code once, through
+     * the shared cache
+     */
+    @Test
+    public void testDecompressorsShareCodes() throws IOException {
+        byte[] bytes = new byte[40000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ("abcdefgh".charAt(i * 5 % 8));
+        }
+        byte[] container = BlockCompressorTest.compress(bytes, 1000);
+        CodeCache.shared().clear();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HuffmanStreams.decompress(new ByteArrayInputStream(container), output);
+        Assert.assertArrayEquals(bytes, output.toByteArray());
+        Assert.assertEquals(1, CodeCache.shared().misses());
+        Assert.assertEquals(39, CodeCache.shared().hits());
+    }
+}
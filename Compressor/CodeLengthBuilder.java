@@ -0,0 +1,163 @@
+import java.util.Arrays;
+
+/**
+ * Computes Huffman code lengths from byte frequencies using only flat
+ * primitive arrays, which are kept and reused from one call to the next.
+ *
+ * The symbols are sorted by frequency and the tree is built in place with
+ * the method of Moffat and Katajainen ("In-Place Calculation of
+ * Minimum-Redundancy Codes", 1995): one pass merges the two cheapest
+ * items and stores parent indices, a second turns parents into depths and a
+ * third turns internal node depths into leaf depths. Lengths over the limit
+ * are then cut back while keeping the code complete enough to decode.
+ */
+public class CodeLengthBuilder {
+
+    private static final int ALPHABET_SIZE = HuffmanCode.ALPHABET_SIZE;
+
+    //frequencies are shifted into the upper bits of a sort key above the
+    //symbol, so they must fit in the remaining bits
+    private static final int SYMBOL_BITS = 8;
+    private static final long MAX_KEY_FREQUENCY = (1L << (Long.SIZE - 1 - SYMBOL_BITS)) - 1;
+
+    private final long[] keys = new long[ALPHABET_SIZE];    //frequency, symbol
+    private final long[] work = new long[ALPHABET_SIZE];    //in-place tree
+
+    /**
+     * Computes code lengths for the given frequencies
+     * Pre: frequencies has ALPHABET_SIZE non-negative entries; maxLength is
+     *      large enough for every used symbol (2^maxLength >= symbols used)
+     * Post: lengths[symbol] holds the code length of each symbol, 0 for
+     *       symbols with frequency 0, all at most maxLength
+     *
+     * @param frequencies how often each symbol occurs
+     * @param maxLength   the longest code allowed
+     * @param lengths     where the lengths are stored
+     */
+    public void build(long[] frequencies, int maxLength, byte[] lengths) {
+        Arrays.fill(lengths, (byte) 0);
+
+        //sort the used symbols by frequency, scaling huge counts to fit
+        long max = 0;
+        for (long frequency : frequencies) {
+            max = Math.max(max, frequency);
+        }
+        int shift = 0;
+        while ((max >>> shift) > MAX_KEY_FREQUENCY) {
+            shift++;
+        }
+        int n = 0;
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            if (frequencies[symbol] != 0) {
+                long frequency = Math.max(frequencies[symbol] >>> shift, 1);
+                keys[n++] = (frequency << SYMBOL_BITS) | symbol;
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+        if ((1L << Math.min(maxLength, 62)) < n) {
+            throw new IllegalArgumentException("Codes of " + maxLength
+                    + " bits can't cover " + n + " symbols");
+        }
+        if (n == 1) {
+            //a lone symbol still needs one bit per occurrence
+            lengths[(int) (keys[0] & 0xff)] = 1;
+            return;
+        }
+        Arrays.sort(keys, 0, n);
+        for (int i = 0; i < n; i++) {
+            work[i] = keys[i] >>> SYMBOL_BITS;
+        }
+
+        computeDepths(work, n);
+        limitDepths(work, n, maxLength);
+        for (int i = 0; i < n; i++) {
+            lengths[(int) (keys[i] & 0xff)] = (byte) work[i];
+        }
+    }
+
+    //pre : a[0..n-1] holds frequencies in increasing order, n >= 2
+    //post: a[i] holds the code length of the symbol of frequency a[i], the
+    //      lengths being in decreasing order
+    private static void computeDepths(long[] a, int n) {
+        //first pass, left to right: merge the two cheapest of the remaining
+        //leaves and internal nodes, leaving parent indices behind
+        a[0] += a[1];
+        int root = 0;
+        int leaf = 2;
+        for (int next = 1; next < n - 1; next++) {
+            if (leaf >= n || a[root] < a[leaf]) {
+                a[next] = a[root];
+                a[root++] = next;
+            } else {
+                a[next] = a[leaf++];
+            }
+            if (leaf >= n || (root < next && a[root] < a[leaf])) {
+                a[next] += a[root];
+                a[root++] = next;
+            } else {
+                a[next] += a[leaf++];
+            }
+        }
+
+        //second pass, right to left: internal node depths from parents
+        a[n - 2] = 0;
+        for (int next = n - 3; next >= 0; next--) {
+            a[next] = a[(int) a[next]] + 1;
+        }
+
+        //third pass, right to left: leaf depths from internal node depths
+        int available = 1;
+        int used = 0;
+        int depth = 0;
+        root = n - 2;
+        int next = n - 1;
+        while (available > 0) {
+            while (root >= 0 && a[root] == depth) {
+                used++;
+                root--;
+            }
+            while (available > used) {
+                a[next--] = depth;
+                available--;
+            }
+            available = 2 * used;
+            depth++;
+            used = 0;
+        }
+    }
+
+    //pre : lengths[0..n-1] are the lengths of a complete code, least frequent
+    //      symbol first
+    //post: no length exceeds maxLength and the lengths still form a prefix
+    //      code, shorter codes going to more frequent symbols where possible
+    private static void limitDepths(long[] lengths, int n, int maxLength) {
+        if (lengths[0] <= maxLength) {
+            return;
+        }
+        //measure the code space in units of 2^-maxLength
+        long capacity = 1L << maxLength;
+        long used = 0;
+        for (int i = 0; i < n; i++) {
+            lengths[i] = Math.min(lengths[i], maxLength);
+            used += 1L << (maxLength - lengths[i]);
+        }
+        //over budget: lengthen the least frequent codes still under the limit
+        int i = 0;
+        while (used > capacity) {
+            while (lengths[i] >= maxLength) {
+                i++;
+            }
+            used -= 1L << (maxLength - lengths[i] - 1);
+            lengths[i]++;
+        }
+        //spare room: shorten the most frequent codes that fit
+        for (int j = n - 1; j >= 0; j--) {
+            while (lengths[j] > 1 && used + (1L << (maxLength - lengths[j])) <= capacity) {
+                used += 1L << (maxLength - lengths[j]);
+                lengths[j]--;
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class CodeLengthBuilderTest {
+
+    /**
+     * Returns frequencies following the Fibonacci numbers for the first
+     * count symbols, the input that gives the deepest Huffman tree
+     */
+    private static long[] fibonacci(int count) {
+        long[] frequencies = new long[HuffmanCode.ALPHABET_SIZE];
+        long previous = 1;
+        long current = 1;
+        for (int symbol = 0; symbol < count; symbol++) {
+            frequencies[symbol] = current;
+            long next = previous + current;
+            previous = current;
+            current = next;
+        }
+        return frequencies;
+    }
+
+    /**
+     * Returns the Kraft sum of the lengths in units of 2^-limit; a prefix
+     * code has a sum of at most 2^limit
+     */
+    private static long kraftSum(byte[] lengths, int limit) {
+        long sum = 0;
+        for (byte length : lengths) {
+            if (length > 0) {
+                sum += 1L << (limit - length);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Without a binding limit, Fibonacci frequencies give a code as deep as
+     * there are symbols, less one
+     */
+    @Test
+    public void testFibonacciUnlimited() {
+        byte[] lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+        new CodeLengthBuilder().build(fibonacci(40), 62, lengths);
+        int longest = 0;
+        for (byte length : lengths) {
+            longest = Math.max(longest, length);
+        }
+        Assert.assertEquals(39, longest);
+        Assert.assertEquals(1L << 62, kraftSum(lengths, 62));
+    }
+
+    /**
+     * With the 15 bit limit every Fibonacci symbol gets a code of at most
+     * 15 bits, more frequent symbols never get longer codes, and the codes
+     * still form a prefix code
+     */
+    @Test
+    public void testFibonacciLimited() {
+        for (int count : new int[] {16, 20, 40, 90}) {
+            long[] frequencies = fibonacci(count);
+            byte[] lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+            new CodeLengthBuilder().build(frequencies, HuffmanCode.MAX_CODE_LENGTH, lengths);
+            for (int symbol = 0; symbol < HuffmanCode.ALPHABET_SIZE; symbol++) {
+                if (symbol < count) {
+                    Assert.assertTrue(lengths[symbol] >= 1);
+                    Assert.assertTrue(lengths[symbol] <= HuffmanCode.MAX_CODE_LENGTH);
+                } else {
+                    Assert.assertEquals(0, lengths[symbol]);
+                }
+                if (symbol > 0 && symbol < count) {
+                    Assert.assertTrue(lengths[symbol] <= lengths[symbol - 1]);
+                }
+            }
+            Assert.assertTrue(kraftSum(lengths, HuffmanCode.MAX_CODE_LENGTH)
+                    <= 1L << HuffmanCode.MAX_CODE_LENGTH);
+        }
+    }
+
+    /**
+     * A code built from Fibonacci frequencies stays within the limit and
+     * round-trips a block holding them
+     */
+    @Test
+    public void testFibonacciCodeRoundTrip() throws IOException {
+        long[] frequencies = fibonacci(30);
+        HuffmanCode code = new HuffmanCode(frequencies);
+        for (byte length : code.getCodeLengths()) {
+            Assert.assertTrue(length <= HuffmanCode.MAX_CODE_LENGTH);
+        }
+        byte[] bytes = new byte[3000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 30);
+        }
+        BlockCompressor.EncodedBlock block = BlockCompressor.encode(bytes, 0, bytes.length,
+                code, false);
+        Assert.assertArrayEquals(bytes,
+                BlockDecompressor.decodeBlock(code, block.payload, bytes.length));
+    }
+
+    /**
+     * No symbols give no codes, and a lone symbol gets one bit
+     */
+    @Test
+    public void testFewSymbols() {
+        CodeLengthBuilder builder = new CodeLengthBuilder();
+        byte[] lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+        builder.build(new long[HuffmanCode.ALPHABET_SIZE], 15, lengths);
+        Assert.assertEquals(0, kraftSum(lengths, 15));
+
+        long[] frequencies = new long[HuffmanCode.ALPHABET_SIZE];
+        frequencies[255] = 1000;
+        builder.build(frequencies, 15, lengths);
+        Assert.assertEquals(1, lengths[255]);
+        Assert.assertEquals(1L << 14, kraftSum(lengths, 15));
+    }
+
+    /**
+     * A limit too short to give every used symbol a code is refused
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testLimitTooShort() {
+        byte[] lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+        new CodeLengthBuilder().build(fibonacci(40), 5, lengths);
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Told about the progress of each compression. Listeners are called on the
+ * compressing thread, so they should return quickly.
+ */
+public interface CompressionListener {
+
+    /**
+     * Called as each phase of a compression finishes
+     *
+     * @param name  what is being compressed
+     * @param phase the phase that finished
+     * @param nanos how long it took
+     */
+    default void phaseCompleted(String name, CompressionMetrics.Phase phase, long nanos) {
+    }
+
+    /**
+     * Called once a compression is complete and its output closed
+     *
+     * @param metrics what the compression cost and achieved
+     */
+    void compressed(CompressionMetrics metrics);
+}
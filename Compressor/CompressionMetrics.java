@@ -0,0 +1,153 @@
+import java.util.Locale;
+
+/**
+ * What one compression cost and what it achieved: how long each phase took,
+ * the input and output sizes, the bits spent per input byte next to the
+ * Shannon entropy of the input (the least any order-0 code could spend), and
+ * the most bytes held in memory while writing. Together these tell whether a
+ * dataset compresses well enough to be worth the CPU time.
+ */
+public class CompressionMetrics {
+
+    /**
+     * The phases of a compression, in the order they run
+     */
+    public enum Phase {
+        COUNT,  //counting byte frequencies
+        BUILD,  //building the code from the counts
+        ENCODE, //writing the code words
+        FLUSH   //writing out the last buffered bytes and closing
+    }
+
+    private final String name;
+    private final long inputBytes;
+    private final long outputBytes;
+    private final long[] phaseNanos;
+    private final double bitsPerSymbol;
+    private final double entropy;
+    private final long peakBufferBytes;
+
+    /**
+     * New metrics for one compression
+     * Pre: phaseNanos has one entry per Phase, indexed by ordinal
+     *
+     * @param name            what was compressed
+     * @param inputBytes      size of the input
+     * @param outputBytes     size of the output, header included
+     * @param phaseNanos      time spent in each phase
+     * @param bitsPerSymbol   code bits written per input byte
+     * @param entropy         Shannon entropy of the input in bits per byte
+     * @param peakBufferBytes most bytes held in memory while writing
+     */
+    public CompressionMetrics(String name, long inputBytes, long outputBytes,
+                              long[] phaseNanos, double bitsPerSymbol, double entropy,
+                              long peakBufferBytes) {
+        this.name = name;
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+        this.phaseNanos = phaseNanos.clone();
+        this.bitsPerSymbol = bitsPerSymbol;
+        this.entropy = entropy;
+        this.peakBufferBytes = peakBufferBytes;
+    }
+
+    /**
+     * Returns the Shannon entropy, in bits per symbol, of input with the
+     * given symbol counts, 0 if there are none
+     */
+    public static double entropy(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        double entropy = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                double p = (double) count / total;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    /**
+     * Returns the code bits needed for input with the given symbol counts
+     * under a code with the given lengths
+     */
+    public static long codedBits(long[] counts, byte[] lengths) {
+        long bits = 0;
+        for (int i = 0; i < counts.length; i++) {
+            bits += counts[i] * lengths[i];
+        }
+        return bits;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    //returns the nanoseconds spent in the given phase
+    public long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    //returns the nanoseconds spent in all phases together
+    public long getTotalNanos() {
+        long total = 0;
+        for (long nanos : phaseNanos) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    public double getBitsPerSymbol() {
+        return bitsPerSymbol;
+    }
+
+    public double getEntropy() {
+        return entropy;
+    }
+
+    public long getPeakBufferBytes() {
+        return peakBufferBytes;
+    }
+
+    //returns output size over input size, 1 for empty input
+    public double getRatio() {
+        return inputBytes == 0 ? 1 : (double) outputBytes / inputBytes;
+    }
+
+    //returns input bytes compressed per second over all phases
+    public double getBytesPerSecond() {
+        long total = getTotalNanos();
+        return total == 0 ? 0 : inputBytes * 1e9 / total;
+    }
+
+    //returns the bits per symbol spent beyond the entropy
+    public double getRedundancy() {
+        return bitsPerSymbol - entropy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(name);
+        result.append(String.format(Locale.ROOT,
+                ": %d -> %d bytes (ratio %.3f), %.3f bits/symbol vs entropy %.3f, %.1f MB/s",
+                inputBytes, outputBytes, getRatio(), bitsPerSymbol, entropy,
+                getBytesPerSecond() / 1e6));
+        for (Phase phase : Phase.values()) {
+            result.append(String.format(Locale.ROOT, ", %s %.1f ms",
+                    phase.name().toLowerCase(Locale.ROOT), getNanos(phase) / 1e6));
+        }
+        result.append(", peak buffer ").append(peakBufferBytes).append(" bytes");
+        return result.toString();
+    }
+}
@@ -0,0 +1,140 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A listener that keeps running totals of the compressions reported to it,
+ * and can be registered with the platform MBean server so the totals can be
+ * watched from JConsole or any other JMX client.
+ */
+public class CompressionStats implements CompressionStatsMBean, CompressionListener {
+
+    //name under which register() publishes the shared instance
+    public static final String OBJECT_NAME = "HuffmanCompressor:type=CompressionStats";
+
+    private static CompressionStats registered;
+
+    private long compressions;
+    private long inputBytes;
+    private long outputBytes;
+    private final long[] phaseNanos = new long[CompressionMetrics.Phase.values().length];
+    private double lastBitsPerSymbol;
+    private double lastEntropy;
+    private long peakBufferBytes;
+
+    /**
+     * Returns the instance registered with the platform MBean server,
+     * registering it on the first call
+     *
+     * @throws IllegalStateException if the MBean server refuses it
+     */
+    public static synchronized CompressionStats register() {
+        if (registered == null) {
+            CompressionStats stats = new CompressionStats();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.registerMBean(stats, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                throw new IllegalStateException("Can't register " + OBJECT_NAME, e);
+            }
+            registered = stats;
+        }
+        return registered;
+    }
+
+    @Override
+    public synchronized void compressed(CompressionMetrics metrics) {
+        compressions++;
+        inputBytes += metrics.getInputBytes();
+        outputBytes += metrics.getOutputBytes();
+        for (CompressionMetrics.Phase phase : CompressionMetrics.Phase.values()) {
+            phaseNanos[phase.ordinal()] += metrics.getNanos(phase);
+        }
+        lastBitsPerSymbol = metrics.getBitsPerSymbol();
+        lastEntropy = metrics.getEntropy();
+        peakBufferBytes = Math.max(peakBufferBytes, metrics.getPeakBufferBytes());
+    }
+
+    @Override
+    public synchronized long getCompressions() {
+        return compressions;
+    }
+
+    @Override
+    public synchronized long getInputBytes() {
+        return inputBytes;
+    }
+
+    @Override
+    public synchronized long getOutputBytes() {
+        return outputBytes;
+    }
+
+    @Override
+    public synchronized double getRatio() {
+        return inputBytes == 0 ? 1 : (double) outputBytes / inputBytes;
+    }
+
+    @Override
+    public synchronized double getBytesPerSecond() {
+        long total = 0;
+        for (long nanos : phaseNanos) {
+            total += nanos;
+        }
+        return total == 0 ? 0 : inputBytes * 1e9 / total;
+    }
+
+    @Override
+    public long getCountMillis() {
+        return millis(CompressionMetrics.Phase.COUNT);
+    }
+
+    @Override
+    public long getBuildMillis() {
+        return millis(CompressionMetrics.Phase.BUILD);
+    }
+
+    @Override
+    public long getEncodeMillis() {
+        return millis(CompressionMetrics.Phase.ENCODE);
+    }
+
+    @Override
+    public long getFlushMillis() {
+        return millis(CompressionMetrics.Phase.FLUSH);
+    }
+
+    @Override
+    public synchronized double getLastBitsPerSymbol() {
+        return lastBitsPerSymbol;
+    }
+
+    @Override
+    public synchronized double getLastEntropy() {
+        return lastEntropy;
+    }
+
+    @Override
+    public synchronized long getPeakBufferBytes() {
+        return peakBufferBytes;
+    }
+
+    @Override
+    public synchronized void reset() {
+        compressions = 0;
+        inputBytes = 0;
+        outputBytes = 0;
+        Arrays.fill(phaseNanos, 0);
+        lastBitsPerSymbol = 0;
+        lastEntropy = 0;
+        peakBufferBytes = 0;
+    }
+
+    //returns the total milliseconds spent in the given phase
+    private synchronized long millis(CompressionMetrics.Phase phase) {
+        return TimeUnit.NANOSECONDS.toMillis(phaseNanos[phase.ordinal()]);
+    }
+}
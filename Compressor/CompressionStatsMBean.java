@@ -0,0 +1,34 @@
+/**
+ * Management interface of CompressionStats: running totals over every
+ * compression reported to it and the figures of the most recent one.
+ */
+public interface CompressionStatsMBean {
+
+    long getCompressions();
+
+    long getInputBytes();
+
+    long getOutputBytes();
+
+    //output bytes over input bytes, over all compressions
+    double getRatio();
+
+    //input bytes per second of compression time, over all compressions
+    double getBytesPerSecond();
+
+    long getCountMillis();
+
+    long getBuildMillis();
+
+    long getEncodeMillis();
+
+    long getFlushMillis();
+
+    double getLastBitsPerSymbol();
+
+    double getLastEntropy();
+
+    long getPeakBufferBytes();
+
+    void reset();
+}
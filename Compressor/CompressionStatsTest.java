@@ -0,0 +1,172 @@
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class CompressionStatsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns metrics for a compression of the given sizes taking the
+     * given nanoseconds in each phase
+     */
+    private static CompressionMetrics metrics(long input, long output, long nanos, long peak) {
+        long[] phaseNanos = new long[CompressionMetrics.Phase.values().length];
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = nanos * (i + 1);
+        }
+        return new CompressionMetrics("test", input, output, phaseNanos, 2.5, 2.25, peak);
+    }
+
+    /**
+     * Entropy is the Shannon entropy in bits: 8 for every byte value
+     * equally often, 1 for two, 0 for one value or none
+     */
+    @Test
+    public void testEntropy() {
+        long[] counts = new long[HuffmanCode.ALPHABET_SIZE];
+        Assert.assertEquals(0, CompressionMetrics.entropy(counts), 0);
+        counts['a'] = 7;
+        Assert.assertEquals(0, CompressionMetrics.entropy(counts), 0);
+        counts['b'] = 7;
+        Assert.assertEquals(1, CompressionMetrics.entropy(counts), 1e-12);
+        Arrays.fill(counts, 3);
+        Assert.assertEquals(8, CompressionMetrics.entropy(counts), 1e-12);
+
+        byte[] lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+        Arrays.fill(lengths, (byte) 8);
+        Assert.assertEquals(8 * 3 * 256, CompressionMetrics.codedBits(counts, lengths));
+    }
+
+    /**
+     * The figures derived from one compression: ratio, speed over all
+     * phases, and bits spent beyond the entropy
+     */
+    @Test
+    public void testDerivedFigures() {
+        CompressionMetrics metrics = metrics(1000000, 600000, 100000000, 4096);
+        Assert.assertEquals(1000000000L, metrics.getTotalNanos());
+        Assert.assertEquals(200000000L, metrics.getNanos(CompressionMetrics.Phase.BUILD));
+        Assert.assertEquals(0.6, metrics.getRatio(), 1e-12);
+        Assert.assertEquals(1e6, metrics.getBytesPerSecond(), 1e-6);
+        Assert.assertEquals(0.25, metrics.getRedundancy(), 1e-12);
+        Assert.assertTrue(metrics.toString().startsWith(
+                "test: 1000000 -> 600000 bytes (ratio 0.600), 2.500 bits/symbol"));
+
+        CompressionMetrics empty = metrics(0, 278, 0, 0);
+        Assert.assertEquals(1, empty.getRatio(), 0);
+        Assert.assertEquals(0, empty.getBytesPerSecond(), 0);
+    }
+
+    /**
+     * The stats add up sizes and phase times over compressions, keep the
+     * last bits per symbol and the highest peak, and start over on reset
+     */
+    @Test
+    public void testTotalsAndReset() {
+        CompressionStats stats = new CompressionStats();
+        stats.compressed(metrics(1000, 500, 1000000, 10));
+        stats.compressed(metrics(3000, 500, 3000000, 30));
+        stats.compressed(metrics(0, 278, 0, 20));
+        Assert.assertEquals(3, stats.getCompressions());
+        Assert.assertEquals(4000, stats.getInputBytes());
+        Assert.assertEquals(1278, stats.getOutputBytes());
+        Assert.assertEquals(1278 / 4000.0, stats.getRatio(), 1e-12);
+        Assert.assertEquals(4, stats.getCountMillis());
+        Assert.assertEquals(16, stats.getFlushMillis());
+        Assert.assertEquals(4000 * 1e9 / 40000000, stats.getBytesPerSecond(), 1e-6);
+        Assert.assertEquals(30, stats.getPeakBufferBytes());
+        Assert.assertEquals(2.5, stats.getLastBitsPerSymbol(), 0);
+
+        stats.reset();
+        Assert.assertEquals(0, stats.getCompressions());
+        Assert.assertEquals(0, stats.getInputBytes());
+        Assert.assertEquals(0, stats.getEncodeMillis());
+        Assert.assertEquals(1, stats.getRatio(), 0);
+        Assert.assertEquals(0, stats.getPeakBufferBytes());
+    }
+
+    /**
+     * Compressing a file tells a listener about every phase in order and
+     * then reports metrics matching the files: the real sizes, bits per
+     * symbol no better than the entropy and less than a bit worse, and a
+     * peak of one output buffer at most
+     */
+    @Test
+    public void testListenerSeesCompression() throws IOException {
+        File input = folder.newFile("data.bin");
+        byte[] bytes = new byte[300000];
+        Random random = new Random(1);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (random.nextInt(64) * random.nextInt(4));
+        }
+        Files.write(input.toPath(), bytes);
+
+        List<CompressionMetrics.Phase> phases = new ArrayList<>();
+        List<CompressionMetrics> reported = new ArrayList<>();
+        CompressionListener listener = new CompressionListener() {
+            @Override
+            public void phaseCompleted(String name, CompressionMetrics.Phase phase, long nanos) {
+                Assert.assertEquals(input.getPath(), name);
+                Assert.assertTrue(nanos >= 0);
+                phases.add(phase);
+            }
+
+            @Override
+            public void compressed(CompressionMetrics metrics) {
+                reported.add(metrics);
+            }
+        };
+        HuffmanCompressor huffman = new HuffmanCompressor(input.getPath());
+        huffman.setVerbose(false);
+        huffman.addListener(listener);
+        huffman.compress(false);
+
+        Assert.assertEquals(List.of(CompressionMetrics.Phase.values()), phases);
+        Assert.assertEquals(1, reported.size());
+        CompressionMetrics metrics = reported.get(0);
+        Assert.assertEquals(bytes.length, metrics.getInputBytes());
+        Assert.assertEquals(new File(huffman.getCompressedName()).length(),
+                metrics.getOutputBytes());
+        Assert.assertTrue(metrics.getBitsPerSymbol() >= metrics.getEntropy());
+        Assert.assertTrue(metrics.getRedundancy() < 1);
+        Assert.assertTrue(metrics.getPeakBufferBytes() > 0);
+        Assert.assertTrue(metrics.getPeakBufferBytes() <= 1 << 16);
+
+        huffman.removeListener(listener);
+        huffman.compress(false);
+        Assert.assertEquals(1, reported.size());
+    }
+
+    /**
+     * register() publishes one shared instance whose totals can be read
+     * through the platform MBean server
+     */
+    @Test
+    public void testRegister() throws Exception {
+        CompressionStats stats = CompressionStats.register();
+        Assert.assertSame(stats, CompressionStats.register());
+        stats.reset();
+        stats.compressed(metrics(100, 50, 10, 1));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(CompressionStats.OBJECT_NAME);
+        Assert.assertEquals(1L, server.getAttribute(name, "Compressions"));
+        Assert.assertEquals(100L, server.getAttribute(name, "InputBytes"));
+        server.invoke(name, "reset", null, null);
+        Assert.assertEquals(0L, server.getAttribute(name, "Compressions"));
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The dictionaries known to a process, by ID, so that a payload can be
+ * decoded with whichever dictionary it names. Each dictionary keeps its own
+ * decoding table, so a registered dictionary stays warm for every payload
+ * that uses it. Safe for use by many threads at once.
+ */
+public class DictionaryRegistry {
+
+    private final Map<Integer, HuffmanDictionary> dictionaries = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a dictionary
+     * Post: payloads naming its ID are decoded with it
+     *
+     * @throws IllegalArgumentException if a different dictionary already
+     *                                  has the same ID
+     */
+    public void register(HuffmanDictionary dictionary) {
+        HuffmanDictionary previous = dictionaries.putIfAbsent(dictionary.getId(), dictionary);
+        if (previous != null && previous != dictionary) {
+            throw new IllegalArgumentException("Dictionary " + dictionary.getId()
+                    + " is already registered");
+        }
+    }
+
+    /**
+     * Reads a dictionary written by HuffmanDictionary.save and adds it
+     *
+     * @return the dictionary read
+     * @throws IOException if input doesn't hold an intact dictionary
+     */
+    public HuffmanDictionary load(InputStream input) throws IOException {
+        HuffmanDictionary dictionary = HuffmanDictionary.load(input);
+        register(dictionary);
+        return dictionary;
+    }
+
+    /**
+     * Returns the dictionary with the given ID
+     *
+     * @throws IOException if no dictionary has that ID
+     */
+    public HuffmanDictionary get(int id) throws IOException {
+        HuffmanDictionary dictionary = dictionaries.get(id);
+        if (dictionary == null) {
+            throw new IOException("Unknown dictionary: " + id);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Decodes one payload from src into dst with the dictionary it names
+     * Pre: src is positioned at the start of a payload
+     * Post: src's position is just past the payload and dst's position is
+     *       past the decoded bytes
+     *
+     * @return the number of decoded bytes
+     * @throws IOException if the dictionary is unknown or the payload is
+     *                     malformed or doesn't fit in dst
+     */
+    public int decode(ByteBuffer src, ByteBuffer dst) throws IOException {
+        return get(HuffmanDictionary.payloadId(src)).decode(src, dst);
+    }
+
+    /**
+     * Decodes one payload with the dictionary it names
+     *
+     * @return the original bytes
+     * @throws IOException if the dictionary is unknown or the payload is
+     *                     malformed
+     */
+    public byte[] decode(byte[] payload) throws IOException {
+        return get(HuffmanDictionary.payloadId(ByteBuffer.wrap(payload))).decode(payload);
+    }
+}
@@ -0,0 +1,194 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts how often each of the 256 byte values occurs. Counts are longs, so
+ * inputs over 2^31 bytes are fine, and bytes may be added a piece at a time
+ * as they arrive.
+ *
+ * The inner loop spreads consecutive bytes over four separate histograms so
+ * that runs of the same byte don't make each increment wait on the previous
+ * one; the histograms are summed into the totals after every update.
+ */
+public class FrequencyCounter {
+
+    //bytes counted before the striped histograms are added into the totals,
+    //small enough that no int entry can overflow
+    private static final int FLUSH_SIZE = 1 << 30;
+
+    //bytes per chunk when counting in parallel
+    private static final int PARALLEL_CHUNK = 1 << 20;
+
+    //bytes copied out of a buffer without a backing array at a time
+    private static final int COPY_SIZE = 1 << 16;
+
+    private static final int ALPHABET_SIZE = HuffmanCode.ALPHABET_SIZE;
+
+    private final long[] counts = new long[ALPHABET_SIZE];
+    private final int[] stripe0 = new int[ALPHABET_SIZE];
+    private final int[] stripe1 = new int[ALPHABET_SIZE];
+    private final int[] stripe2 = new int[ALPHABET_SIZE];
+    private final int[] stripe3 = new int[ALPHABET_SIZE];
+    private byte[] copy;   //scratch space for buffers without a backing array
+
+    /**
+     * Counts count bytes of the given array
+     * Pre: 0 <= offset, offset + count <= bytes.length
+     * Post: the bytes are added to the totals
+     */
+    public void update(byte[] bytes, int offset, int count) {
+        while (count > 0) {
+            int piece = Math.min(count, FLUSH_SIZE);
+            countStriped(bytes, offset, piece);
+            flush();
+            offset += piece;
+            count -= piece;
+        }
+    }
+
+    /**
+     * Counts the remaining bytes of the given buffer
+     * Pre: none
+     * Post: the bytes are added to the totals and the buffer's position is
+     *       at its limit
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            int start = buffer.arrayOffset() + buffer.position();
+            update(buffer.array(), start, buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        if (copy == null) {
+            copy = new byte[COPY_SIZE];
+        }
+        while (buffer.hasRemaining()) {
+            int piece = Math.min(buffer.remaining(), COPY_SIZE);
+            buffer.get(copy, 0, piece);
+            update(copy, 0, piece);
+        }
+    }
+
+    /**
+     * Adds the totals of another counter into this one
+     * Post: other is unchanged
+     */
+    public void add(FrequencyCounter other) {
+        for (int i = 0; i < ALPHABET_SIZE; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    /**
+     * Clears the totals so the counter can be reused
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * Returns the totals, indexed by byte value
+     * Post: the returned array is a copy
+     */
+    public long[] getCounts() {
+        return counts.clone();
+    }
+
+    /**
+     * Copies the totals, indexed by byte value, into the given array
+     * Pre: into has at least ALPHABET_SIZE entries
+     */
+    public void getCounts(long[] into) {
+        System.arraycopy(counts, 0, into, 0, ALPHABET_SIZE);
+    }
+
+    /**
+     * Returns the number of bytes counted so far
+     */
+    public long total() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Counts the remaining bytes of the given buffer in parallel, one chunk
+     * per task, and adds up the chunk totals
+     * Pre: none
+     * Post: the buffer's position and limit are unchanged
+     *
+     * @param buffer the bytes to count
+     * @param pool   where the chunks are counted
+     * @return a counter holding the totals
+     */
+    public static FrequencyCounter count(ByteBuffer buffer, ForkJoinPool pool) {
+        ByteBuffer view = buffer.duplicate();
+        return pool.invoke(new CountTask(view, view.position(), view.limit()));
+    }
+
+    //post: the bytes are counted into the striped histograms
+    private void countStriped(byte[] bytes, int offset, int count) {
+        int[] c0 = stripe0;
+        int[] c1 = stripe1;
+        int[] c2 = stripe2;
+        int[] c3 = stripe3;
+        int i = offset;
+        int end = offset + count;
+        for (; i + 3 < end; i += 4) {
+            c0[bytes[i] & 0xff]++;
+            c1[bytes[i + 1] & 0xff]++;
+            c2[bytes[i + 2] & 0xff]++;
+            c3[bytes[i + 3] & 0xff]++;
+        }
+        for (; i < end; i++) {
+            c0[bytes[i] & 0xff]++;
+        }
+    }
+
+    //post: the striped histograms are added into the totals and cleared
+    private void flush() {
+        for (int i = 0; i < ALPHABET_SIZE; i++) {
+            counts[i] += (long) stripe0[i] + stripe1[i] + stripe2[i] + stripe3[i];
+            stripe0[i] = 0;
+            stripe1[i] = 0;
+            stripe2[i] = 0;
+            stripe3[i] = 0;
+        }
+    }
+
+    //counts the bytes of buffer from start to end, splitting large ranges
+    private static class CountTask extends RecursiveTask<FrequencyCounter> {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer buffer;
+        private final int start;
+        private final int end;
+
+        CountTask(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected FrequencyCounter compute() {
+            if (end - start <= PARALLEL_CHUNK) {
+                ByteBuffer chunk = buffer.duplicate();
+                chunk.limit(end).position(start);
+                FrequencyCounter counter = new FrequencyCounter();
+                counter.update(chunk);
+                return counter;
+            }
+            int middle = start + (end - start) / 2;
+            CountTask right = new CountTask(buffer, middle, end);
+            right.fork();
+            FrequencyCounter result = new CountTask(buffer, start, middle).compute();
+            result.add(right.join());
+            return result;
+        }
+    }
+}
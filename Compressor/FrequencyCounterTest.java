@@ -0,0 +1,123 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class FrequencyCounterTest {
+
+    /**
+     * Counts the bytes one at a time, the plain way
+     */
+    private static long[] expected(byte[] bytes, int from, int to) {
+        long[] counts = new long[HuffmanCode.ALPHABET_SIZE];
+        for (int i = from; i < to; i++) {
+            counts[bytes[i] & 0xff]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Every byte value, 255 included, is counted in its own slot, whatever
+     * the offset and whether or not the count is a multiple of the four
+     * stripes
+     */
+    @Test
+    public void testEveryByteValue() {
+        byte[] bytes = new byte[256 * 257 / 2];
+        int next = 0;
+        for (int value = 0; value < 256; value++) {
+            for (int i = 0; i <= value; i++) {
+                bytes[next++] = (byte) value;
+            }
+        }
+        for (int[] range : new int[][] {{0, bytes.length}, {1, bytes.length},
+                                        {3, bytes.length - 2}, {100, 101}, {7, 7}}) {
+            FrequencyCounter counter = new FrequencyCounter();
+            counter.update(bytes, range[0], range[1] - range[0]);
+            Assert.assertArrayEquals(expected(bytes, range[0], range[1]), counter.getCounts());
+            Assert.assertEquals(range[1] - range[0], counter.total());
+        }
+        FrequencyCounter counter = new FrequencyCounter();
+        counter.update(bytes, 0, bytes.length);
+        Assert.assertEquals(256, counter.getCounts()[255]);
+        Assert.assertEquals(1, counter.getCounts()[0]);
+    }
+
+    /**
+     * A count grows past the range of an int, as it does for a file over
+     * 2 GB of one byte, without wrapping
+     */
+    @Test
+    public void testCountsPastIntRange() {
+        byte[] bytes = new byte[1 << 24];
+        Arrays.fill(bytes, (byte) 255);
+        FrequencyCounter counter = new FrequencyCounter();
+        long total = 0;
+        while (total <= Integer.MAX_VALUE) {
+            counter.update(bytes, 0, bytes.length);
+            total += bytes.length;
+        }
+        Assert.assertEquals(total, counter.getCounts()[255]);
+        Assert.assertEquals(total, counter.total());
+    }
+
+    /**
+     * Counting a buffer in parallel chunks gives the same totals as counting
+     * it in one go, for heap and direct buffers, from the buffer's position
+     * to its limit, which are left as they were
+     */
+    @Test
+    public void testParallelMatchesSequential() {
+        byte[] bytes = new byte[5 * (1 << 20) + 3];
+        new Random(1).nextBytes(bytes);
+        ByteBuffer heap = ByteBuffer.wrap(bytes);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (ByteBuffer buffer : new ByteBuffer[] {heap, direct}) {
+                buffer.limit(bytes.length - 5).position(11);
+                FrequencyCounter counter = FrequencyCounter.count(buffer, pool);
+                Assert.assertArrayEquals(expected(bytes, 11, bytes.length - 5),
+                        counter.getCounts());
+                Assert.assertEquals(11, buffer.position());
+                Assert.assertEquals(bytes.length - 5, buffer.limit());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Counts arriving in pieces, from arrays and buffers, add up; add
+     * combines counters and reset starts afresh
+     */
+    @Test
+    public void testPiecesAddAndReset() {
+        byte[] bytes = new byte[70000];
+        new Random(2).nextBytes(bytes);
+        FrequencyCounter pieces = new FrequencyCounter();
+        pieces.update(bytes, 0, 1000);
+        pieces.update(ByteBuffer.wrap(bytes, 1000, 30000));
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length - 31000);
+        direct.put(bytes, 31000, bytes.length - 31000).flip();
+        pieces.update(direct);
+        Assert.assertFalse(direct.hasRemaining());
+        Assert.assertArrayEquals(expected(bytes, 0, bytes.length), pieces.getCounts());
+
+        FrequencyCounter sum = new FrequencyCounter();
+        sum.add(pieces);
+        sum.add(pieces);
+        long[] counts = new long[HuffmanCode.ALPHABET_SIZE];
+        sum.getCounts(counts);
+        Assert.assertEquals(2L * bytes.length, sum.total());
+        Assert.assertEquals(2 * pieces.getCounts()[255], counts[255]);
+
+        sum.reset();
+        Assert.assertEquals(0, sum.total());
+        sum.update(bytes, 5, 1);
+        Assert.assertEquals(1, sum.getCounts()[bytes[5] & 0xff]);
+    }
+}
@@ -0,0 +1,306 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compresses, decompresses or verifies many files in one run, with no prompts, so a
+ * nightly job pays for one JVM start rather than one per file. Files are
+ * named directly, by directory (searched recursively) or by glob pattern,
+ * and handled concurrently on a fixed number of threads. The files in
+ * progress are limited too: a file is only handed to the pool once a
+ * permit is free, so the queue never holds more open work than that.
+ * A summary of bytes and throughput is printed at the end.
+ *
+ * usage: java HuffmanBatch compress|decompress|verify [-threads n] [-open n]
+ *                          [-verbose] file|directory|glob ...
+ *
+ * Compressing name writes name.short and decompressing it writes name.new,
+ * following HuffmanCompressor, and verifying name.short checks it against
+ * its frame checksum at disk speed, without decoding or writing anything;
+ * directories give every file not already ending in one of those
+ * suffixes to compress, and every .short file to decompress or verify.
+ * Every file is found and its output named before any work starts: files
+ * that would write the same output, or overwrite another file of the run,
+ * fail rather than race, as does any file named for decompressing or
+ * verifying that doesn't end in .short. The exit status is 1 if any file
+ * failed or is damaged.
+ */
+public class HuffmanBatch {
+
+    private static final String[] OUTPUT_SUFFIXES = {".short", ".code", ".new", ".debug"};
+
+    //what is done to each file
+    private enum Mode { COMPRESS, DECOMPRESS, VERIFY }
+
+    private final Mode mode;
+    private final boolean verbose;
+    private final ExecutorService pool;
+    private final Semaphore open;
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong inputBytes = new AtomicLong();
+    private final AtomicLong outputBytes = new AtomicLong();
+    //the files found so far, by absolute path, in the order found
+    private final Map<Path, Path> found = new LinkedHashMap<>();
+
+    private HuffmanBatch(Mode mode, int threads, int maxOpen, boolean verbose) {
+        this.mode = mode;
+        this.verbose = verbose;
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.open = new Semaphore(maxOpen);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.exit(run(args));
+    }
+
+    //post: handles the files the arguments name and prints the summary;
+    //      returns the exit status
+    static int run(String[] args) throws IOException, InterruptedException {
+        Mode mode = null;
+        for (Mode candidate : Mode.values()) {
+            if (args.length > 0 && args[0].equals(candidate.name().toLowerCase(Locale.ROOT))) {
+                mode = candidate;
+            }
+        }
+        if (mode == null) {
+            return usage();
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxOpen = -1;
+        boolean verbose = false;
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-open":
+                    maxOpen = Integer.parseInt(args[++i]);
+                    break;
+                case "-verbose":
+                    verbose = true;
+                    break;
+                default:
+                    names.add(args[i]);
+            }
+        }
+        if (names.isEmpty() || threads < 1) {
+            return usage();
+        }
+        if (maxOpen < 1) {
+            maxOpen = 2 * threads;
+        }
+
+        HuffmanBatch batch = new HuffmanBatch(mode, threads, maxOpen, verbose);
+        long start = System.nanoTime();
+        for (String name : names) {
+            batch.findAll(name);
+        }
+        batch.submitAll();
+        batch.finish();
+        batch.printSummary(System.nanoTime() - start);
+        return batch.failures.get() == 0 ? 0 : 1;
+    }
+
+    //post: prints how to run the program; returns the exit status for it
+    private static int usage() {
+        System.err.println("usage: java HuffmanBatch compress|decompress|verify "
+                + "[-threads n] [-open n] [-verbose] file|directory|glob ...");
+        return 2;
+    }
+
+    //post: every file the name stands for is added to the files found
+    private void findAll(String name) throws IOException {
+        Path path = Paths.get(name);
+        if (Files.isRegularFile(path)) {
+            find(path);
+        } else if (Files.isDirectory(path)) {
+            findMatching(path, this::wanted);
+        } else if (globStart(name) >= 0) {
+            Path base = globBase(name);
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + name);
+            findMatching(base, matcher::matches);
+        } else {
+            fail(name, "no such file or directory");
+        }
+    }
+
+    //post: adds every regular file under base that the filter accepts
+    private void findMatching(Path base, Predicate<Path> filter) throws IOException {
+        List<Path> matches;
+        try (Stream<Path> walk = Files.walk(base)) {
+            matches = walk.filter(Files::isRegularFile).filter(filter).sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path file : matches) {
+            find(file);
+        }
+    }
+
+    //post: the file is added unless it was already found under another name
+    private void find(Path file) {
+        found.putIfAbsent(file.toAbsolutePath().normalize(), file);
+    }
+
+    //post: every file found is queued, waiting for a permit before each,
+    //      except files that fail because of their name or their output's
+    private void submitAll() throws InterruptedException {
+        Map<Path, List<Path>> byOutput = new HashMap<>();
+        Map<Path, HuffmanCompressor> compressors = new LinkedHashMap<>();
+        for (Map.Entry<Path, Path> entry : found.entrySet()) {
+            HuffmanCompressor huffman = compressor(entry.getValue());
+            if (huffman == null) {
+                fail(entry.getValue().toString(), "not a .short file");
+                continue;
+            }
+            compressors.put(entry.getKey(), huffman);
+            Path output = output(huffman);
+            if (output != null) {
+                byOutput.computeIfAbsent(output, k -> new ArrayList<>()).add(entry.getValue());
+            }
+        }
+        for (Map.Entry<Path, HuffmanCompressor> entry : compressors.entrySet()) {
+            Path file = found.get(entry.getKey());
+            Path output = output(entry.getValue());
+            List<Path> writers = output == null ? null : byOutput.get(output);
+            if (writers != null && writers.size() > 1) {
+                fail(file.toString(), "output " + output + " is also written for "
+                        + writers.stream().filter(other -> other != file)
+                                .map(Path::toString).collect(Collectors.joining(", ")));
+            } else if (output != null && found.containsKey(output)) {
+                fail(file.toString(), "output " + output
+                        + " is also an input of this run");
+            } else {
+                submit(file, entry.getValue());
+            }
+        }
+    }
+
+    //returns the compressor for the file, or null if the mode needs a
+    //.short file and it isn't one
+    private HuffmanCompressor compressor(Path file) {
+        HuffmanCompressor huffman;
+        if (mode == Mode.COMPRESS) {
+            huffman = new HuffmanCompressor(file.toString());
+        } else if (file.getFileName().toString().endsWith(".short")) {
+            huffman = HuffmanCompressor.forCompressedFile(file.toString());
+        } else {
+            return null;
+        }
+        huffman.setVerbose(false);
+        return huffman;
+    }
+
+    //returns the absolute path of the file the compressor writes, or null
+    //if it only reads
+    private Path output(HuffmanCompressor huffman) {
+        String name = mode == Mode.COMPRESS ? huffman.getCompressedName()
+                : mode == Mode.DECOMPRESS ? huffman.getDecompressedName() : null;
+        return name == null ? null : Paths.get(name).toAbsolutePath().normalize();
+    }
+
+    //post: the failure is counted and reported
+    private void fail(String name, String message) {
+        failures.incrementAndGet();
+        System.err.println(name + ": " + message);
+    }
+
+    //post: the file is queued once a permit is free
+    private void submit(Path file, HuffmanCompressor huffman) throws InterruptedException {
+        open.acquire();
+        pool.execute(() -> {
+            try {
+                process(file, huffman);
+            } finally {
+                open.release();
+            }
+        });
+    }
+
+    //post: the file is compressed, decompressed or verified and counted, or
+    //      the failure is reported
+    private void process(Path file, HuffmanCompressor huffman) {
+        try {
+            long before;
+            long after;
+            if (mode == Mode.COMPRESS) {
+                huffman.compress(false);
+                before = Files.size(file);
+                after = Files.size(Paths.get(huffman.getCompressedName()));
+            } else {
+                before = Files.size(file);
+                if (mode == Mode.VERIFY) {
+                    after = huffman.verify();
+                } else {
+                    huffman.decompress(false);
+                    after = Files.size(Paths.get(huffman.getDecompressedName()));
+                }
+            }
+            files.incrementAndGet();
+            inputBytes.addAndGet(before);
+            outputBytes.addAndGet(after);
+            if (verbose) {
+                System.out.println(file + ": " + before + " -> " + after + " bytes");
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(file.toString(), e.toString());
+        }
+    }
+
+    //post: every queued file is done and the pool is shut down
+    private void finish() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    //post: the totals of the run are printed
+    private void printSummary(long nanos) {
+        double seconds = nanos / 1e9;
+        long in = inputBytes.get();
+        long out = outputBytes.get();
+        String done = mode == Mode.COMPRESS ? "Compressed"
+                : mode == Mode.DECOMPRESS ? "Decompressed" : "Verified";
+        System.out.printf(Locale.ROOT, "%s %d files (%d failed): %d -> %d bytes, ratio %.3f%n",
+                done, files.get(), failures.get(),
+                in, out, in == 0 ? 1.0 : (double) out / in);
+        System.out.printf(Locale.ROOT, "%.2f s, %.1f MB/s, %.1f files/s%n", seconds,
+                (mode == Mode.COMPRESS ? in : out) / 1e6 / seconds, files.get() / seconds);
+    }
+
+    //returns true if a file found in a directory should be processed
+    private boolean wanted(Path file) {
+        String name = file.getFileName().toString();
+        if (mode != Mode.COMPRESS) {
+            return name.endsWith(".short");
+        }
+        for (String suffix : OUTPUT_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //returns the index of the first glob character in the name, -1 if none
+    private static int globStart(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if ("*?[{".indexOf(name.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //returns the directory before the first glob character of the pattern,
+    //where the search for matches starts
+    private static Path globBase(String pattern) {
+        int slash = pattern.lastIndexOf(File.separatorChar, globStart(pattern));
+        return slash < 0 ? Paths.get("") : Paths.get(pattern.substring(0, slash + 1));
+    }
+}
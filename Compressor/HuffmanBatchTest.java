@@ -0,0 +1,118 @@
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class HuffmanBatchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes the text to the named file in the temporary folder
+     * @return the file
+     */
+    private Path write(String name, String text) throws IOException {
+        Path file = new File(folder.getRoot(), name).toPath();
+        Files.write(file, text.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    /**
+     * Runs the batch on one thread
+     * @return the exit status
+     */
+    private static int run(String mode, Path... files) throws Exception {
+        String[] args = new String[3 + files.length];
+        args[0] = mode;
+        args[1] = "-threads";
+        args[2] = "1";
+        for (int i = 0; i < files.length; i++) {
+            args[3 + i] = files[i].toString();
+        }
+        return HuffmanBatch.run(args);
+    }
+
+    /**
+     * foo and foo.txt would both compress to foo.short, so both fail and
+     * neither writes it, while other files in the same directory compress
+     */
+    @Test
+    public void testClashingOutputsFail() throws Exception {
+        write("foo", "the first foo");
+        write("foo.txt", "the second foo");
+        Path other = write("bar", "bar bar bar");
+        Assert.assertEquals(1, run("compress", folder.getRoot().toPath()));
+        Assert.assertFalse(Files.exists(folder.getRoot().toPath().resolve("foo.short")));
+        Assert.assertTrue(Files.exists(folder.getRoot().toPath().resolve("bar.short")));
+
+        Files.delete(other.resolveSibling("bar.short"));
+        Assert.assertEquals(0, run("compress", other));
+        Assert.assertTrue(Files.exists(other.resolveSibling("bar.short")));
+    }
+
+    /**
+     * A file named twice, once by a path that isn't normalized, is handled
+     * once rather than clashing with itself
+     */
+    @Test
+    public void testSameFileTwice() throws Exception {
+        Path file = write("twice", "once is enough");
+        Path again = folder.getRoot().toPath().resolve(".").resolve("twice");
+        Assert.assertEquals(0, run("compress", file, again));
+        Assert.assertEquals(0, run("verify", file.resolveSibling("twice.short")));
+    }
+
+    /**
+     * Compressing a file whose output is another file of the run fails
+     * rather than overwrite it while it is read
+     */
+    @Test
+    public void testOutputOverwritingInputFails() throws Exception {
+        Path plain = write("data", "some data");
+        Path named = write("data.short", "not compressed at all");
+        Assert.assertEquals(1, run("compress", plain, named));
+        Assert.assertEquals("not compressed at all",
+                new String(Files.readAllBytes(named), StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Files named for decompressing or verifying that don't end in .short
+     * fail on their own, and the .short files named with them still decode
+     */
+    @Test
+    public void testDecompressNeedsShortFiles() throws Exception {
+        Path text = write("notes.txt", "notes, notes");
+        Assert.assertEquals(0, run("compress", text));
+        Path compressed = text.resolveSibling("notes.short");
+        Path stray = write("notes", "not compressed");
+
+        Assert.assertEquals(1, run("verify", compressed, stray));
+        Assert.assertEquals(1, run("decompress", stray, compressed));
+        Assert.assertEquals("notes, notes", new String(
+                Files.readAllBytes(text.resolveSibling("notes.new")), StandardCharsets.US_ASCII));
+        Assert.assertFalse(Files.exists(text.resolveSibling("notes.new.new")));
+        Assert.assertEquals(0, run("decompress", compressed));
+    }
+
+    /**
+     * name.txt.short decompresses to name.txt.new rather than reading
+     * name.short
+     */
+    @Test
+    public void testTextSuffixKeptWhenDecompressing() throws Exception {
+        Path bin = write("log.bin", "log line, log line");
+        Assert.assertEquals(0, run("compress", bin));
+        Path compressed = bin.resolveSibling("log.txt.short");
+        Files.move(bin.resolveSibling("log.bin.short"), compressed);
+        Assert.assertEquals(0, run("decompress", compressed));
+        Assert.assertEquals("log line, log line", new String(
+                Files.readAllBytes(bin.resolveSibling("log.txt.new")), StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Measures the hot paths of the compressor: building a code from counts,
+ * encoding, decoding, and raw bit reads and writes, over synthetic corpora
+ * (uniform, skewed, text, binary) of several sizes and any real files given.
+ * Every benchmark is warmed up before it is timed, and reports throughput
+ * along with the bytes it allocated per operation, so regressions in either
+ * show up. Results can be written as JSON to be tracked across releases.
+ *
+ * usage: java HuffmanBenchmark [-sizes 65536,1048576,...] [-warmup n]
+ *                              [-runs n] [-json results.json] [file ...]
+ */
+public class HuffmanBenchmark {
+
+    private static final int[] DEFAULT_SIZES = {1 << 16, 1 << 20, 1 << 24};
+
+    //one timed result
+    private static class Result {
+        final String benchmark;
+        final String corpus;
+        final int size;
+        final double nanosPerOp;
+        final double bytesAllocatedPerOp;
+
+        Result(String benchmark, String corpus, int size, double nanosPerOp,
+               double bytesAllocatedPerOp) {
+            this.benchmark = benchmark;
+            this.corpus = corpus;
+            this.size = size;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesAllocatedPerOp = bytesAllocatedPerOp;
+        }
+
+        double megabytesPerSecond() {
+            return size / 1e6 / (nanosPerOp / 1e9);
+        }
+    }
+
+    //an operation on one prepared corpus; returns a value so that the work
+    //can't be optimized away
+    private interface Operation {
+        long run() throws IOException;
+    }
+
+    private final int warmup;
+    private final int runs;
+    private final List<Result> results = new ArrayList<>();
+    private long sink;
+
+    private HuffmanBenchmark(int warmup, int runs) {
+        this.warmup = warmup;
+        this.runs = runs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = DEFAULT_SIZES;
+        int warmup = 5;
+        int runs = 10;
+        String json = null;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-sizes":
+                    sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "-json":
+                    json = args[++i];
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+
+        HuffmanBenchmark benchmark = new HuffmanBenchmark(warmup, runs);
+        Random random = new Random(42);
+        for (int size : sizes) {
+            benchmark.measureAll("uniform", uniform(size, random));
+            benchmark.measureAll("skewed", skewed(size, random));
+            benchmark.measureAll("text", text(size, random));
+            benchmark.measureAll("binary", binary(size, random));
+        }
+        for (String file : files) {
+            benchmark.measureAll(Paths.get(file).getFileName().toString(),
+                    Files.readAllBytes(Paths.get(file)));
+        }
+        if (json != null) {
+            try (PrintStream output = new PrintStream(new FileOutputStream(json))) {
+                benchmark.writeJson(output);
+            }
+        }
+    }
+
+    //post: every benchmark has been measured on the given corpus
+    private void measureAll(String corpus, byte[] bytes) throws IOException {
+        FrequencyCounter counter = new FrequencyCounter();
+        counter.update(bytes, 0, bytes.length);
+        long[] counts = counter.getCounts();
+        HuffmanCode code = new HuffmanCode(counts);
+        BlockCompressor.EncodedBlock block = BlockCompressor.encode(bytes, 0, bytes.length);
+        byte[] output = new byte[bytes.length];
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+        measure("tree-build", corpus, bytes.length, () ->
+                new HuffmanCode(counts).getCodeLengths()[0]);
+        measure("count", corpus, bytes.length, () -> {
+            FrequencyCounter fresh = new FrequencyCounter();
+            fresh.update(bytes, 0, bytes.length);
+            return fresh.total();
+        });
+        measure("encode", corpus, bytes.length, () ->
+                BlockCompressor.encode(bytes, 0, bytes.length, code, false).payload.length);
+        measure("decode", corpus, bytes.length, () -> code.decode(
+                new BitInputStream(new ByteArrayInputStream(block.payload)),
+                output, 0, bytes.length));
+        measure("translate", corpus, bytes.length, () -> {
+            code.translate(new BitInputStream(new ByteArrayInputStream(block.payload)), discard);
+            return 0;
+        });
+        measure("bit-read", corpus, bytes.length, () -> {
+            BitInputStream input = new BitInputStream(new ByteArrayInputStream(block.payload));
+            long ones = 0;
+            while (input.hasNextBit()) {
+                ones += input.nextBit();
+            }
+            return ones;
+        });
+        //bit writes stream to a scratch file, as compressing does
+        Path scratch = Files.createTempFile("bit-write", ".tmp");
+        try {
+            measure("bit-write", corpus, bytes.length, () -> {
+                BitOutputStream bits = new BitOutputStream(FileChannel.open(scratch,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+                for (byte b : bytes) {
+                    for (int i = 0; i < 8; i++) {
+                        bits.write(b >>> i & 1);
+                    }
+                }
+                bits.close();
+                return 0;
+            });
+        } finally {
+            Files.delete(scratch);
+        }
+
+        HuffmanCodec.Encoder encoder = new HuffmanCodec.Encoder();
+        HuffmanCodec.Decoder decoder = new HuffmanCodec.Decoder();
+        ByteBuffer source = ByteBuffer.wrap(bytes);
+        ByteBuffer frame = ByteBuffer.allocateDirect(HuffmanCodec.maxFrameLength(bytes.length));
+        ByteBuffer decoded = ByteBuffer.allocateDirect(bytes.length);
+        measure("codec-encode", corpus, bytes.length, () -> {
+            frame.clear();
+            return encoder.encode(source.duplicate(), frame);
+        });
+        frame.flip();
+        measure("codec-decode", corpus, bytes.length, () -> {
+            decoded.clear();
+            return decoder.decode(frame.duplicate(), decoded);
+        });
+    }
+
+    //post: the operation is warmed up, timed and recorded
+    private void measure(String name, String corpus, int size, Operation operation)
+            throws IOException {
+        for (int i = 0; i < warmup; i++) {
+            sink += operation.run();
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            sink += operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        Result result = new Result(name, corpus, size, (double) elapsed / runs,
+                allocated < 0 ? -1 : (double) allocated / runs);
+        results.add(result);
+        System.out.printf("%-13s %-10s %10d B  %10.1f MB/s  %14.0f B/op allocated%n",
+                name, corpus, size, result.megabytesPerSecond(), result.bytesAllocatedPerOp);
+    }
+
+    //returns the bytes allocated by this thread so far, or -1 if the JVM
+    //can't tell
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    //post: the results are written to output as a JSON array
+    private void writeJson(PrintStream output) {
+        output.println("[");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            output.printf(Locale.ROOT, "  {\"benchmark\": \"%s\", \"corpus\": \"%s\", \"size\": %d, "
+                            + "\"nanosPerOp\": %.1f, \"megabytesPerSecond\": %.3f, "
+                            + "\"bytesAllocatedPerOp\": %.1f}%s%n",
+                    result.benchmark, result.corpus.replace("\"", "\\\""), result.size,
+                    result.nanosPerOp, result.megabytesPerSecond(),
+                    result.bytesAllocatedPerOp, i < results.size() - 1 ? "," : "");
+        }
+        output.println("]");
+    }
+
+    //returns size bytes with every value equally likely
+    private static byte[] uniform(int size, Random random) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    //returns size bytes whose values fall off geometrically
+    private static byte[] skewed(int size, Random random) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) Math.min(255, (int) (-Math.log(1 - random.nextDouble()) * 6));
+        }
+        return bytes;
+    }
+
+    //returns size bytes of log-like lines of English words
+    private static byte[] text(int size, Random random) {
+        String[] words = {"the", "of", "and", "request", "error", "user", "session",
+                "timeout", "connection", "INFO", "WARN", "server", "response", "id"};
+        StringBuilder text = new StringBuilder(size + 64);
+        while (text.length() < size) {
+            text.append(words[random.nextInt(words.length)]);
+            text.append(random.nextInt(12) == 0 ? '\n' : ' ');
+            if (random.nextInt(20) == 0) {
+                text.append(random.nextInt(100000)).append(' ');
+            }
+        }
+        return Arrays.copyOf(text.toString().getBytes(), size);
+    }
+
+    //returns size bytes of fixed-width records of small integers and flags
+    private static byte[] binary(int size, Random random) {
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        long timestamp = 1_700_000_000_000L;
+        while (bytes.remaining() >= 16) {
+            timestamp += random.nextInt(1000);
+            bytes.putLong(timestamp);
+            bytes.putInt(random.nextInt(4096));
+            bytes.putShort((short) random.nextInt(16));
+            bytes.put((byte) (random.nextBoolean() ? 1 : 0));
+            bytes.put((byte) 0);
+        }
+        return bytes.array();
+    }
+}
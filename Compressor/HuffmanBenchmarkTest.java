@@ -0,0 +1,70 @@
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+public class HuffmanBenchmarkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String[] BENCHMARKS = {"tree-build", "count", "encode", "decode",
+            "translate", "bit-read", "bit-write", "codec-encode", "codec-decode"};
+
+    /**
+     * A short run over two sizes of every synthetic corpus and a real file
+     * measures every benchmark on every corpus and writes one JSON object
+     * per result, quoting the file name, with a line on the console for each
+     */
+    @Test
+    public void testSmokeRun() throws Exception {
+        byte[] bytes = new byte[3000];
+        new Random(1).nextBytes(bytes);
+        Path file = folder.getRoot().toPath().resolve("real \"file\".bin");
+        Files.write(file, bytes);
+        Path json = folder.getRoot().toPath().resolve("results.json");
+
+        PrintStream console = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, "UTF-8"));
+        try {
+            HuffmanBenchmark.main(new String[] {"-sizes", "1000,4096", "-warmup", "1",
+                    "-runs", "2", "-json", json.toString(), file.toString()});
+        } finally {
+            System.setOut(console);
+        }
+
+        int results = BENCHMARKS.length * (4 * 2 + 1);
+        String[] lines = printed.toString("UTF-8").split("\n");
+        Assert.assertEquals(results, lines.length);
+
+        List<String> written = Files.readAllLines(json, StandardCharsets.UTF_8);
+        Assert.assertEquals("[", written.get(0));
+        Assert.assertEquals("]", written.get(written.size() - 1));
+        Assert.assertEquals(results + 2, written.size());
+        for (String benchmark : BENCHMARKS) {
+            for (String corpus : new String[] {"uniform", "skewed", "text", "binary"}) {
+                for (int size : new int[] {1000, 4096}) {
+                    String start = "  {\"benchmark\": \"" + benchmark + "\", \"corpus\": \""
+                            + corpus + "\", \"size\": " + size + ", \"nanosPerOp\": ";
+                    Assert.assertEquals(1,
+                            written.stream().filter(l -> l.startsWith(start)).count());
+                }
+            }
+            String real = "  {\"benchmark\": \"" + benchmark
+                    + "\", \"corpus\": \"real \\\"file\\\".bin\", \"size\": 3000,";
+            Assert.assertEquals(1, written.stream().filter(l -> l.startsWith(real)).count());
+        }
+        for (int i = 1; i < written.size() - 1; i++) {
+            Assert.assertEquals(i < written.size() - 2, written.get(i).endsWith("},"));
+        }
+    }
+}
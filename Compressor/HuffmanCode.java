@@ -2,41 +2,49 @@
  * Created by Matthew Niculae
  * 4/29/2021
  */
-import java.io.PrintStream;
+import java.io.*;
 import java.util.*;
 public class HuffmanCode {
 
+    //number of distinct byte values a code can cover
+    public static final int ALPHABET_SIZE = 256;
+
+    //longest code built from frequencies
+    public static final int MAX_CODE_LENGTH = 15;
+
+    //number of input bits resolved by a single decode table lookup
+    public static final int TABLE_BITS = 10;
+
     private HuffmanNode root;
 
-    private static class HuffmanNode implements Comparable<HuffmanNode> {
-        public final Character data;
-        public final Integer frequency;
+    //decode table, built by the first decode; volatile so that a code shared
+    //between threads is decoded without taking a lock. Two threads may both
+    //build it, but they build the same table and either is kept.
+    private volatile DecodeTable table;
+
+    //encode table indexed by symbol: the code packed with its first bit in
+    //the lowest position, and the code length (0 if the symbol has no code)
+    private long[] codeWords;
+    private byte[] codeLengths;
+
+    //true if codes are assigned canonically from their lengths alone
+    private boolean canonical;
+
+    //scratch arrays for computing code lengths, reused by each thread
+    private static final ThreadLocal<CodeLengthBuilder> BUILDER =
+            ThreadLocal.withInitial(CodeLengthBuilder::new);
+
+    private static class HuffmanNode {
+        public final int data; //the symbol of a leaf, -1 for internal nodes
         public HuffmanNode left;
         public HuffmanNode right;
 
         public HuffmanNode() {
-            this.data = null;
-            this.frequency = null;
-
+            this.data = -1;
         }
 
-        public HuffmanNode(char data, int frequency) {
+        public HuffmanNode(int data) {
             this.data = data;
-            this.frequency = frequency;
-        }
-
-        public HuffmanNode(char data, int frequency, HuffmanNode left, HuffmanNode right) {
-            this.data = data;
-            this.frequency = frequency;
-            this.left = left;
-            this.right = right;
-        }
-
-        @Override
-        public int compareTo(HuffmanNode other) {
-            if (this.frequency == null || other.frequency == null)
-                throw new NullPointerException("Frequency is null");
-            return this.frequency - other.frequency;
         }
     }
 
@@ -47,42 +55,170 @@ public class HuffmanCode {
      * Post: All Huffman Code objects have been built
      */
     public HuffmanCode(int[] frequencies) {
-        //use a priority Queue to build the HuffmanCode
+        this(toLong(frequencies));
+    }
+
+    /**
+     * New huffman code object initialized using an array of frequencies that
+     * may exceed the range of an int
+     * @param frequencies an array of byte frequencies
+     * Pre: no Huffman code objects have been built
+     * Post: All Huffman Code objects have been built
+     */
+    public HuffmanCode(long[] frequencies) {
+        if (frequencies.length > ALPHABET_SIZE) {
+            throw new IllegalArgumentException("Too many frequencies: " + frequencies.length);
+        }
+        //compute the code lengths in flat arrays, then assign canonical codes
+        byte[] lengths = new byte[ALPHABET_SIZE];
+        BUILDER.get().build(Arrays.copyOf(frequencies, ALPHABET_SIZE), MAX_CODE_LENGTH, lengths);
+        canonicalTree(lengths);
+    }
+
+    /**
+     * New huffman code object with canonical codes of the given lengths
+     * @param lengths the code length of every symbol, 0 for no code
+     * Pre: lengths describe a prefix code
+     * Post: codes are assigned in order of length, then symbol
+     */
+    public HuffmanCode(byte[] lengths) {
+        canonicalTree(lengths);
+    }
+
+    /**
+     * Reads a code written by writeHeader from the given input
+     * Pre: input is positioned at the start of a header
+     * Post: input is positioned just past the header
+     *
+     * @param input where the header is read from
+     * @return the code the header describes
+     */
+    public static HuffmanCode readHeader(InputStream input) throws IOException {
+        byte[] lengths = new byte[ALPHABET_SIZE];
+        new DataInputStream(input).readFully(lengths);
+        return new HuffmanCode(lengths);
+    }
+
+    /**
+     * Writes this code to the given output as ALPHABET_SIZE bytes, the code
+     * length of each symbol in order
+     * Pre: this code is canonical (built from frequencies or lengths)
+     * Post: output holds the header
+     *
+     * @param output where the header is written
+     */
+    public void writeHeader(OutputStream output) throws IOException {
+        if (!canonical) {
+            throw new IllegalStateException("Only canonical codes have a header");
+        }
+        output.write(getCodeLengths());
+    }
+
+    //post: root is the tree of the canonical code with the given lengths,
+    //      and the encode table holds its codes
+    private void canonicalTree(byte[] lengths) {
+        codeWords = new long[ALPHABET_SIZE];
+        canonicalWords(lengths, codeWords);
+        root = new HuffmanNode();
+        codeLengths = lengths.clone();
+        table = null;
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            if (lengths[symbol] > 0) {
+                insert(symbol, codeWords[symbol], lengths[symbol]);
+            }
+        }
+        canonical = true;
+    }
+
+    /**
+     * Computes the canonical code of every symbol from the code lengths
+     * Pre: lengths has ALPHABET_SIZE entries describing a prefix code
+     * Post: words[symbol] holds the code of each symbol, first bit in the
+     *       lowest position, ready for BitOutputStream.writeBits
+     *
+     * @param lengths the code length of every symbol, 0 for no code
+     * @param words   where the codes are stored
+     */
+    public static void canonicalWords(byte[] lengths, long[] words) {
+        if (lengths.length != ALPHABET_SIZE) {
+            throw new IllegalArgumentException("Need " + ALPHABET_SIZE + " code lengths");
+        }
+        //count the codes of each length
+        int[] lengthCount = new int[Long.SIZE + 1];
+        for (byte length : lengths) {
+            if (length < 0 || length > Long.SIZE) {
+                throw new IllegalArgumentException("Illegal code length: " + length);
+            }
+            lengthCount[length]++;
+        }
+        lengthCount[0] = 0;
+        //find the first code of each length, checking the codes fit
+        long[] nextCode = new long[Long.SIZE + 1];
+        long code = 0;
+        for (int length = 1; length <= Long.SIZE; length++) {
+            code = (code + lengthCount[length - 1]) << 1;
+            nextCode[length] = code;
+            if (lengthCount[length] > 0 && length < Long.SIZE
+                    && code + lengthCount[length] > (1L << length)) {
+                throw new IllegalArgumentException("Code lengths are not a prefix code");
+            }
+        }
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            int length = lengths[symbol];
+            words[symbol] = 0;
+            if (length > 0) {
+                long value = nextCode[length]++;
+                //the first bit on the path is the highest bit of the value
+                words[symbol] = Long.reverse(value) >>> (Long.SIZE - length);
+            }
+        }
+    }
+
+    //adds a leaf for data at the end of the path given by the low length bits
+    //of code, first step lowest
+    private void insert(int data, long code, int length) {
         HuffmanNode current = root;
-        PriorityQueue<HuffmanNode> q = new PriorityQueue<>();
-        for (int i = 0; i < frequencies.length; i++) {
-            if (frequencies[i] != 0) {
-                char currChar = (char) i;
-                HuffmanNode temp = new HuffmanNode(currChar, frequencies[i]);
-                q.add(temp);
+        for (int i = 0; i < length - 1; i++) {
+            if ((code >>> i & 1) == 0) {
+                if (current.left == null) current.left = new HuffmanNode();
+                current = current.left;
+            } else {
+                if (current.right == null) current.right = new HuffmanNode();
+                current = current.right;
             }
         }
-        while (q.size() > 1) {
-            //remove the two smallest nodes
-            HuffmanNode node1 = q.remove();
-            HuffmanNode node2 = q.remove();
-            HuffmanNode newNode = new HuffmanNode((char) -1, node1.frequency + node2.frequency, node1, node2);
-            q.add(newNode);
+        if ((code >>> (length - 1) & 1) == 0) {
+            current.left = new HuffmanNode(data);
+        } else {
+            current.right = new HuffmanNode(data);
         }
-        root = q.remove();
+    }
+
+    //returns the given frequencies widened to longs
+    private static long[] toLong(int[] frequencies) {
+        long[] result = new long[frequencies.length];
+        for (int i = 0; i < frequencies.length; i++) {
+            result[i] = frequencies[i];
+        }
+        return result;
     }
 
     public HuffmanCode(Scanner input) {
         root = new HuffmanNode();
         while (input.hasNextLine()) {
-            char data = (char) Integer.parseInt(input.nextLine());
+            int data = Integer.parseInt(input.nextLine());
             String path = input.nextLine();
             huffmanHelper(root, data, path);
         }
     }
 
-    private void huffmanHelper(HuffmanNode current, char data, String path) {
+    private void huffmanHelper(HuffmanNode current, int data, String path) {
         //base case: if path is empty
         if (path.length() == 1) {
             if (path.charAt(0) == '0') {
-                current.left = new HuffmanNode(data, -1);
+                current.left = new HuffmanNode(data);
             } else {
-                current.right = new HuffmanNode(data, -1);
+                current.right = new HuffmanNode(data);
             }
             return;
         }
@@ -113,7 +249,7 @@ public class HuffmanCode {
     public void saveHelper(PrintStream output, String path, HuffmanNode current) {
         //base case
         if (current.left == null && current.right == null) {
-            output.println((int) current.data);
+            output.println(current.data);
             output.println(path);
         } else {
             //explore the left
@@ -125,15 +261,209 @@ public class HuffmanCode {
     }
 
 
+    /**
+     * Returns the code of every symbol packed into a word, first bit in the
+     * lowest position, ready for BitOutputStream.writeBits
+     * Pre: none
+     * Post: the returned array is indexed by symbol and shared, not copied
+     *
+     * @return the packed code words
+     */
+    public long[] getCodeWords() {
+        buildCodes();
+        return codeWords;
+    }
+
+    /**
+     * Returns the length in bits of the code of every symbol
+     * Pre: none
+     * Post: the returned array is indexed by symbol and shared, not copied
+     *
+     * @return the code lengths, 0 for symbols without a code
+     */
+    public byte[] getCodeLengths() {
+        buildCodes();
+        return codeLengths;
+    }
+
+    //post: the encode table is built for the current tree
+    private void buildCodes() {
+        if (codeLengths != null) {
+            return;
+        }
+        codeWords = new long[ALPHABET_SIZE];
+        codeLengths = new byte[ALPHABET_SIZE];
+        codesHelper(root, 0L, 0);
+    }
+
+    //records the code of every leaf below current, which is reached by the
+    //depth bits of code
+    private void codesHelper(HuffmanNode current, long code, int depth) {
+        if (current == null) {
+            return;
+        }
+        if (isLeaf(current)) {
+            codeWords[current.data] = code;
+            codeLengths[current.data] = (byte) depth;
+        } else {
+            codesHelper(current.left, code, depth + 1);
+            codesHelper(current.right, code | (1L << depth), depth + 1);
+        }
+    }
+
+    /**
+     * Reads the bits from the given input and writes the decoded characters
+     * to the given output. Symbols are resolved TABLE_BITS bits at a time
+     * through a lookup table, falling back to the tree only for codes longer
+     * than the table width.
+     * Pre: input was compressed using this Huffman code
+     * Post: output contains the decompressed characters
+     *
+     * @param input  the compressed bits
+     * @param output where the decompressed characters are written
+     */
     public void translate(BitInputStream input, PrintStream output) {
+        DecodeTable table = decodeTable();
+        int symbol = decodeSymbol(input, table);
+        while (symbol != -1) {
+            output.write(symbol);
+            symbol = decodeSymbol(input, table);
+        }
+    }
+
+    /**
+     * Decodes up to count characters from the given input into the given
+     * array, stopping early only if the input runs out
+     * Pre: input was compressed using this Huffman code
+     * Post: output[offset] onward holds the decoded characters
+     *
+     * @param input  the compressed bits
+     * @param output where the decompressed characters are stored
+     * @param offset index of the first character in output
+     * @param count  how many characters to decode
+     * @return how many characters were decoded
+     */
+    public int decode(BitInputStream input, byte[] output, int offset, int count) {
+        DecodeTable table = decodeTable();
+        for (int i = 0; i < count; i++) {
+            int symbol = decodeSymbol(input, table);
+            if (symbol == -1) {
+                return i;
+            }
+            output[offset + i] = (byte) symbol;
+        }
+        return count;
+    }
+
+    /**
+     * Decodes the next character from the given input
+     * Pre: input was compressed using this Huffman code
+     * Post: the bits of the character are consumed
+     *
+     * @param input the compressed bits
+     * @return the character, or -1 if only padding or a partial code is left
+     */
+    public int nextSymbol(BitInputStream input) {
+        return decodeSymbol(input, decodeTable());
+    }
+
+    //post: returns the next symbol decoded with the given table, or -1 if
+    //      only padding or a partial code is left
+    private static int decodeSymbol(BitInputStream input, DecodeTable table) {
+        int count = input.availableBits(TABLE_BITS);
+        int window = input.peekBits(TABLE_BITS);
+        int length = table.length[window];
+        if (length > 0) {
+            if (length > count) {
+                return -1;
+            }
+            input.skipBits(length);
+            return table.symbol[window];
+        }
+        HuffmanNode current = table.node[window];
+        if (count < TABLE_BITS || current == null) {
+            return -1;
+        }
+        input.skipBits(TABLE_BITS);
+        while (!isLeaf(current)) {
+            if (!input.hasNextBit()) {
+                return -1;
+            }
+            current = (input.nextBit() == 0) ? current.left : current.right;
+            if (current == null) {
+                return -1;
+            }
+        }
+        return current.data;
+    }
+
+    /**
+     * Reads the bits from the given input one at a time, walking the tree
+     * from the root for every character.
+     * Pre: input was compressed using this Huffman code
+     * Post: output contains the decompressed characters
+     *
+     * @param input  the compressed bits
+     * @param output where the decompressed characters are written
+     */
+    public void translateByTree(BitInputStream input, PrintStream output) {
         //stops reading when BitInputStream is empty
         HuffmanNode current = root;
         while (input.hasNextBit()) {
             current = (input.nextBit() == 0) ? current.left : current.right;
             if (current.left == null || current.right == null) {
-                output.write((int) current.data);
+                output.write(current.data);
                 current = root;
             }
         }
     }
-}
\ No newline at end of file
+
+    //returns the decode table, building it the first time it is needed
+    private DecodeTable decodeTable() {
+        DecodeTable current = table;
+        if (current == null) {
+            current = new DecodeTable(root);
+            table = current;
+        }
+        return current;
+    }
+
+    //decode table indexed by the next TABLE_BITS bits of input (first bit in
+    //the lowest position). For codes that fit in the table, symbol and length
+    //hold the decoded symbol and its code length. For longer codes length is
+    //0 and node holds the subtree reached after TABLE_BITS bits, from which
+    //decoding continues one bit at a time. It is filled in the constructor
+    //and never changed, so it can be shared between threads.
+    private static class DecodeTable {
+        final int[] symbol = new int[1 << TABLE_BITS];
+        final byte[] length = new byte[1 << TABLE_BITS];
+        final HuffmanNode[] node = new HuffmanNode[1 << TABLE_BITS];
+
+        DecodeTable(HuffmanNode root) {
+            fill(root, 0, 0);
+        }
+
+        //fills every entry whose low depth bits equal the given code
+        private void fill(HuffmanNode current, int code, int depth) {
+            if (current == null) {
+                return;
+            }
+            if (depth > 0 && isLeaf(current)) {
+                for (int i = code; i < length.length; i += 1 << depth) {
+                    symbol[i] = current.data;
+                    length[i] = (byte) depth;
+                }
+            } else if (depth == TABLE_BITS) {
+                node[code] = current;
+            } else {
+                fill(current.left, code, depth + 1);
+                fill(current.right, code | (1 << depth), depth + 1);
+            }
+        }
+    }
+
+    //returns true if the given node ends a code
+    private static boolean isLeaf(HuffmanNode node) {
+        return node.left == null && node.right == null;
+    }
+}
@@ -0,0 +1,201 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+
+public class HuffmanCodeTest {
+
+    /**
+     * Returns a code whose rarest symbols have codes longer than
+     * TABLE_BITS: Fibonacci counts for the first 30 symbols, the deepest
+     * tree there is, cut to MAX_CODE_LENGTH
+     */
+    private static HuffmanCode deepCode() {
+        long[] counts = new long[HuffmanCode.ALPHABET_SIZE];
+        long previous = 1;
+        long current = 1;
+        for (int symbol = 0; symbol < 30; symbol++) {
+            counts[symbol] = current;
+            long next = previous + current;
+            previous = current;
+            current = next;
+        }
+        return new HuffmanCode(counts);
+    }
+
+    /**
+     * Returns count symbols that have a code, each as likely as any other,
+     * so that the long codes turn up often
+     */
+    private static byte[] symbols(HuffmanCode code, int count, long seed) {
+        byte[] lengths = code.getCodeLengths();
+        Random random = new Random(seed);
+        byte[] bytes = new byte[count];
+        for (int i = 0; i < count; i++) {
+            int symbol = random.nextInt(HuffmanCode.ALPHABET_SIZE);
+            while (lengths[symbol] == 0) {
+                symbol = random.nextInt(HuffmanCode.ALPHABET_SIZE);
+            }
+            bytes[i] = (byte) symbol;
+        }
+        return bytes;
+    }
+
+    /**
+     * Encodes the bytes with the code as a BitOutputStream stream
+     */
+    private static byte[] encode(byte[] bytes, HuffmanCode code) {
+        return BlockCompressor.encode(bytes, 0, bytes.length, code, false).payload;
+    }
+
+    /**
+     * Opens a bit stream over the encoded bytes
+     */
+    private static BitInputStream bits(byte[] encoded) {
+        return new BitInputStream(new ByteArrayInputStream(encoded));
+    }
+
+    /**
+     * Decodes the whole stream with translate
+     */
+    private static byte[] translate(HuffmanCode code, byte[] encoded) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        code.translate(bits(encoded), new PrintStream(output));
+        return output.toByteArray();
+    }
+
+    /**
+     * The table decoder gives the same bytes as walking the tree a bit at
+     * a time, for codes that fit the table and the longer ones that finish
+     * in the tree
+     */
+    @Test
+    public void testTableMatchesTree() {
+        HuffmanCode code = deepCode();
+        int longest = 0;
+        for (byte length : code.getCodeLengths()) {
+            longest = Math.max(longest, length);
+        }
+        Assert.assertEquals(HuffmanCode.MAX_CODE_LENGTH, longest);
+        Assert.assertTrue(longest > HuffmanCode.TABLE_BITS);
+
+        byte[] bytes = symbols(code, 20000, 1);
+        byte[] encoded = encode(bytes, code);
+        ByteArrayOutputStream byTree = new ByteArrayOutputStream();
+        code.translateByTree(bits(encoded), new PrintStream(byTree));
+        Assert.assertArrayEquals(bytes, byTree.toByteArray());
+        Assert.assertArrayEquals(bytes, translate(code, encoded));
+    }
+
+    /**
+     * decode and nextSymbol read the same symbols as translate, stopping
+     * at the end of the bits
+     */
+    @Test
+    public void testDecodeAndNextSymbol() {
+        HuffmanCode code = deepCode();
+        byte[] bytes = symbols(code, 5000, 2);
+        byte[] encoded = encode(bytes, code);
+
+        byte[] decoded = new byte[bytes.length + 10];
+        Assert.assertEquals(bytes.length, code.decode(bits(encoded), decoded, 10, bytes.length));
+        Assert.assertArrayEquals(bytes, Arrays.copyOfRange(decoded, 10, decoded.length));
+        Assert.assertEquals(bytes.length, code.decode(bits(encoded), decoded, 0, decoded.length));
+
+        BitInputStream input = bits(encoded);
+        for (byte b : bytes) {
+            Assert.assertEquals(b & 0xff, code.nextSymbol(input));
+        }
+        Assert.assertEquals(-1, code.nextSymbol(input));
+    }
+
+    /**
+     * Bits that stop part way through a code, short or long, end decoding
+     * rather than give a symbol
+     */
+    @Test
+    public void testPartialCodeAtEnd() {
+        HuffmanCode code = deepCode();
+        byte[] lengths = code.getCodeLengths();
+        long[] words = code.getCodeWords();
+        for (int symbol = 0; symbol < 30; symbol++) {
+            //all but the last bit of the code, as a stream of its own
+            int length = lengths[symbol] - 1;
+            byte[] encoded = new byte[1 + (length + 7) / 8];
+            encoded[0] = (byte) ((8 - length % 8) % 8);
+            for (int i = 0; i < length; i++) {
+                encoded[1 + i / 8] |= (byte) ((words[symbol] >>> i & 1) << (i % 8));
+            }
+            Assert.assertEquals(-1, code.nextSymbol(bits(encoded)));
+            Assert.assertEquals(0, translate(code, encoded).length);
+        }
+    }
+
+    /**
+     * A code read back from the old text format, a tree not built
+     * canonically, decodes through the table too
+     */
+    @Test
+    public void testTextCodeDecodes() {
+        HuffmanCode code = deepCode();
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        code.save(new PrintStream(saved));
+        HuffmanCode loaded = new HuffmanCode(new Scanner(saved.toString()));
+
+        byte[] bytes = symbols(code, 5000, 3);
+        Assert.assertArrayEquals(bytes, translate(loaded, encode(bytes, code)));
+    }
+
+    /**
+     * The packed code table holds, for every symbol, the path of its leaf
+     * in the tree, first step in the lowest bit, even for a tree read from
+     * the text format that wasn't built canonically
+     */
+    @Test
+    public void testCodeTableMatchesTree() {
+        String text = "97\n0\n98\n10\n255\n110\n0\n111\n";
+        HuffmanCode loaded = new HuffmanCode(new Scanner(text));
+        Assert.assertEquals(1, loaded.getCodeLengths()['a']);
+        Assert.assertEquals(0b0, loaded.getCodeWords()['a']);
+        Assert.assertEquals(2, loaded.getCodeLengths()['b']);
+        Assert.assertEquals(0b01, loaded.getCodeWords()['b']);
+        Assert.assertEquals(3, loaded.getCodeLengths()[255]);
+        Assert.assertEquals(0b011, loaded.getCodeWords()[255]);
+        Assert.assertEquals(0b111, loaded.getCodeWords()[0]);
+        Assert.assertEquals(0, loaded.getCodeLengths()['c']);
+
+        HuffmanCode code = deepCode();
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        code.save(new PrintStream(saved));
+        Scanner paths = new Scanner(saved.toString());
+        int leaves = 0;
+        while (paths.hasNextLine()) {
+            int symbol = Integer.parseInt(paths.nextLine());
+            String path = paths.nextLine();
+            Assert.assertEquals(path.length(), code.getCodeLengths()[symbol]);
+            long word = 0;
+            for (int i = 0; i < path.length(); i++) {
+                word |= (long) (path.charAt(i) - '0') << i;
+            }
+            Assert.assertEquals(word, code.getCodeWords()[symbol]);
+            leaves++;
+        }
+        Assert.assertEquals(30, leaves);
+    }
+
+    /**
+     * Only a canonical code can be written as a header of code lengths,
+     * as a reader rebuilds the codes from the lengths alone
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testTextCodeHasNoHeader() throws IOException {
+        HuffmanCode loaded = new HuffmanCode(new Scanner("97\n1\n98\n0\n"));
+        loaded.writeHeader(new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,345 @@
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Compresses buffers straight into buffers, heap or direct, without staging
+ * them in streams or temporary arrays. Encoder and Decoder instances keep
+ * their frequency, length and lookup tables from one call to the next, so a
+ * long-lived instance allocates nothing per frame; an instance must not be
+ * shared between threads.
+ *
+ * A frame holds ALPHABET_SIZE code lengths, the symbol count (int, big
+ * endian whatever the order of the buffer it is written to or read from)
+ * and the bits packed first bit lowest, padded with 0's to a whole byte.
+ * Codes are at most HuffmanCode.MAX_CODE_LENGTH bits, so a frame of n bytes
+ * never takes more than maxFrameLength(n).
+ *
+ * The channel adapters write each buffer as one frame preceded by its
+ * length (int, big endian), and read such frames back.
+ */
+public class HuffmanCodec {
+
+    private static final int ALPHABET_SIZE = HuffmanCode.ALPHABET_SIZE;
+    private static final int MAX_LENGTH = HuffmanCode.MAX_CODE_LENGTH;
+
+    private HuffmanCodec() {
+    }
+
+    /**
+     * Returns the most bytes a frame of count bytes can take
+     */
+    public static int maxFrameLength(int count) {
+        return ALPHABET_SIZE + 4 + (int) (((long) count * MAX_LENGTH + 7) / 8);
+    }
+
+    /**
+     * Encodes buffers into frames
+     */
+    public static class Encoder {
+        private final FrequencyCounter counter = new FrequencyCounter();
+        private final CodeLengthBuilder builder = new CodeLengthBuilder();
+        private final long[] frequencies = new long[ALPHABET_SIZE];
+        private final byte[] lengths = new byte[ALPHABET_SIZE];
+        private final long[] words = new long[ALPHABET_SIZE];
+
+        /**
+         * Encodes the remaining bytes of src as one frame into dst
+         * Pre: dst has at least maxFrameLength(src.remaining()) bytes left
+         * Post: src's position is at its limit and dst's position is just
+         *       past the frame; throws BufferOverflowException if dst is too
+         *       small, leaving both positions unchanged
+         *
+         * @param src the bytes to encode
+         * @param dst where the frame is written
+         * @return the length of the frame
+         */
+        public int encode(ByteBuffer src, ByteBuffer dst) {
+            int count = src.remaining();
+            if (dst.remaining() < maxFrameLength(count)) {
+                throw new BufferOverflowException();
+            }
+            counter.reset();
+            counter.update(src.duplicate());
+            counter.getCounts(frequencies);
+            builder.build(frequencies, MAX_LENGTH, lengths);
+            HuffmanCode.canonicalWords(lengths, words);
+
+            int start = dst.position();
+            dst.put(lengths);
+            putInt(dst, count);
+            pack(src, dst, words, lengths);
+            return dst.position() - start;
+        }
+    }
+
+    /**
+     * Decodes frames into buffers
+     */
+    public static class Decoder {
+        //single-level lookup on the next MAX_LENGTH bits: symbol in the low
+        //byte, code length above it, 0 for bit patterns that are no code
+        private final short[] table = new short[1 << MAX_LENGTH];
+        private final byte[] lengths = new byte[ALPHABET_SIZE];
+        private final byte[] tableLengths = new byte[ALPHABET_SIZE];
+        private final long[] words = new long[ALPHABET_SIZE];
+        private boolean built;
+
+        /**
+         * Decodes one frame from src into dst
+         * Pre: src is positioned at the start of a frame
+         * Post: src's position is just past the frame and dst's position is
+         *       past the decoded bytes
+         *
+         * @param src holds the frame
+         * @param dst where the decoded bytes are written
+         * @return the number of decoded bytes
+         * @throws IOException if the frame is malformed or dst is too small
+         */
+        public int decode(ByteBuffer src, ByteBuffer dst) throws IOException {
+            if (src.remaining() < ALPHABET_SIZE + 4) {
+                throw new IOException("Frame is too short");
+            }
+            src.get(lengths);
+            int count = getInt(src);
+            if (count < 0 || count > dst.remaining()) {
+                throw new IOException("Frame of " + count + " bytes doesn't fit");
+            }
+            prepare();
+            unpack(src, dst, count, table);
+            return count;
+        }
+
+        //post: the lookup table matches the lengths of the current frame,
+        //      rebuilt only if they changed since the last frame
+        private void prepare() throws IOException {
+            if (built && Arrays.equals(lengths, tableLengths)) {
+                return;
+            }
+            for (byte length : lengths) {
+                if (length < 0 || length > MAX_LENGTH) {
+                    throw new IOException("Illegal code length: " + length);
+                }
+            }
+            try {
+                HuffmanCode.canonicalWords(lengths, words);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+            fillTable(lengths, words, table);
+            System.arraycopy(lengths, 0, tableLengths, 0, ALPHABET_SIZE);
+            built = true;
+        }
+    }
+
+    //post: value is written big endian at dst's position, whatever dst's
+    //      byte order, and the position moves past it
+    static void putInt(ByteBuffer dst, int value) {
+        dst.duplicate().order(ByteOrder.BIG_ENDIAN).putInt(dst.position(), value);
+        dst.position(dst.position() + 4);
+    }
+
+    //post: returns the big endian int at src's position, whatever src's
+    //      byte order, and the position moves past it
+    static int getInt(ByteBuffer src) {
+        int value = src.duplicate().order(ByteOrder.BIG_ENDIAN).getInt(src.position());
+        src.position(src.position() + 4);
+        return value;
+    }
+
+    //pre : dst has room for the packed bits of src
+    //post: the remaining bytes of src are written to dst as code words,
+    //      first bit lowest, padded with 0's to a whole byte; src's position
+    //      is at its limit and dst's just past the bits
+    static void pack(ByteBuffer src, ByteBuffer dst, long[] words, byte[] lengths) {
+        ByteBuffer out = dst.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long bits = 0;
+        int numBits = 0;
+        int end = src.limit();
+        for (int i = src.position(); i < end; i++) {
+            int n = src.get(i) & 0xff;
+            bits |= words[n] << numBits;
+            numBits += lengths[n];
+            if (numBits >= Integer.SIZE) {
+                out.putInt((int) bits);
+                bits >>>= Integer.SIZE;
+                numBits -= Integer.SIZE;
+            }
+        }
+        while (numBits > 0) {
+            out.put((byte) bits);
+            bits >>>= 8;
+            numBits -= 8;
+        }
+        src.position(end);
+        dst.position(out.position());
+    }
+
+    //pre : dst has room for count bytes; table was filled by fillTable
+    //post: count bytes are decoded from the bits of src into dst; src's
+    //      position is just past the byte holding the last bit used
+    static void unpack(ByteBuffer src, ByteBuffer dst, int count, short[] table)
+            throws IOException {
+        ByteBuffer in = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long totalBits = 8L * in.remaining();
+        long consumed = 0;
+        long bits = 0;
+        int numBits = 0;
+        int mask = (1 << MAX_LENGTH) - 1;
+        for (int i = 0; i < count; i++) {
+            if (numBits < MAX_LENGTH) {
+                if (in.remaining() >= 4) {
+                    bits |= (in.getInt() & 0xffffffffL) << numBits;
+                    numBits += Integer.SIZE;
+                } else {
+                    while (in.hasRemaining() && numBits <= Long.SIZE - 8) {
+                        bits |= (in.get() & 0xffL) << numBits;
+                        numBits += 8;
+                    }
+                }
+            }
+            int entry = table[(int) bits & mask];
+            int length = entry >>> 8;
+            consumed += length;
+            if (length == 0 || consumed > totalBits) {
+                throw new IOException("Frame is corrupt at byte " + i);
+            }
+            dst.put((byte) entry);
+            bits >>>= length;
+            numBits -= length;
+        }
+        src.position(src.position() + (int) ((consumed + 7) / 8));
+    }
+
+    //pre : table has 2^MAX_LENGTH entries; words holds the canonical code
+    //      words of lengths
+    //post: table maps every MAX_LENGTH-bit window to the symbol its low bits
+    //      start with (low byte) and that code's length (above it), 0 for
+    //      windows that start with no code
+    static void fillTable(byte[] lengths, long[] words, short[] table) {
+        Arrays.fill(table, (short) 0);
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            int length = lengths[symbol];
+            if (length > 0) {
+                short entry = (short) (length << 8 | symbol);
+                for (int i = (int) words[symbol]; i < table.length; i += 1 << length) {
+                    table[i] = entry;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a channel that encodes every buffer written to it as one frame
+     * on the given channel
+     */
+    public static WritableByteChannel newWritableChannel(WritableByteChannel channel) {
+        return new WritableByteChannel() {
+            private final Encoder encoder = new Encoder();
+            private ByteBuffer frame = ByteBuffer.allocate(0);
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                int count = src.remaining();
+                int needed = 4 + maxFrameLength(count);
+                if (frame.capacity() < needed) {
+                    frame = ByteBuffer.allocateDirect(needed);
+                }
+                frame.clear();
+                frame.position(4);
+                int length = encoder.encode(src, frame);
+                frame.putInt(0, length);
+                frame.flip();
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Returns a channel that reads frames from the given channel and yields
+     * their decoded bytes
+     */
+    public static ReadableByteChannel newReadableChannel(ReadableByteChannel channel) {
+        return new ReadableByteChannel() {
+            private final Decoder decoder = new Decoder();
+            private final ByteBuffer prefix = ByteBuffer.allocate(4);
+            private ByteBuffer frame = ByteBuffer.allocate(0);
+            private ByteBuffer decoded = ByteBuffer.allocate(0);
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                while (!decoded.hasRemaining()) {
+                    prefix.clear();
+                    if (!readFully(prefix)) {
+                        return -1;
+                    }
+                    int length = prefix.getInt(0);
+                    if (length < ALPHABET_SIZE + 4) {
+                        throw new IOException("Illegal frame length: " + length);
+                    }
+                    if (frame.capacity() < length) {
+                        frame = ByteBuffer.allocateDirect(length);
+                    }
+                    frame.clear().limit(length);
+                    if (!readFully(frame)) {
+                        throw new EOFException("Frame ends early");
+                    }
+                    frame.flip();
+                    int count = frame.getInt(ALPHABET_SIZE);
+                    if (decoded.capacity() < count) {
+                        decoded = ByteBuffer.allocateDirect(count);
+                    }
+                    decoded.clear();
+                    decoder.decode(frame, decoded);
+                    decoded.flip();
+                }
+                int piece = Math.min(dst.remaining(), decoded.remaining());
+                ByteBuffer slice = decoded.duplicate();
+                slice.limit(slice.position() + piece);
+                dst.put(slice);
+                decoded.position(decoded.position() + piece);
+                return piece;
+            }
+
+            //reads until buffer is full; returns false at a clean end of stream
+            private boolean readFully(ByteBuffer buffer) throws IOException {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        if (buffer.position() == 0) {
+                            return false;
+                        }
+                        throw new EOFException("Frame ends early");
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
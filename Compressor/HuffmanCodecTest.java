@@ -0,0 +1,253 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+public class HuffmanCodecTest {
+
+    /**
+     * Returns the bytes between src's position and limit
+     */
+    private static byte[] remaining(ByteBuffer src) {
+        byte[] bytes = new byte[src.remaining()];
+        src.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Encodes the bytes as one frame into a buffer of the given order
+     * @return the frame
+     */
+    private static byte[] encode(HuffmanCodec.Encoder encoder, byte[] bytes, ByteOrder order) {
+        ByteBuffer dst = ByteBuffer.allocate(HuffmanCodec.maxFrameLength(bytes.length))
+                .order(order);
+        ByteBuffer src = ByteBuffer.wrap(bytes);
+        int length = encoder.encode(src, dst);
+        Assert.assertFalse(src.hasRemaining());
+        Assert.assertEquals(length, dst.position());
+        dst.flip();
+        return remaining(dst);
+    }
+
+    /**
+     * Decodes one frame read from a buffer of the given order, which must
+     * be used up by it
+     */
+    private static byte[] decode(HuffmanCodec.Decoder decoder, byte[] frame, int count,
+                                 ByteOrder order) throws IOException {
+        ByteBuffer src = ByteBuffer.wrap(frame).order(order);
+        ByteBuffer dst = ByteBuffer.allocate(count);
+        Assert.assertEquals(count, decoder.decode(src, dst));
+        Assert.assertFalse(src.hasRemaining());
+        return dst.array();
+    }
+
+    /**
+     * A frame written into a little endian buffer reads back from a big
+     * endian one and the other way round, and both give the same bytes
+     */
+    @Test
+    public void testByteOrderIndependent() throws IOException {
+        byte[] bytes = BlockCompressorTest.randomBytes(3000, 40);
+        HuffmanCodec.Encoder encoder = new HuffmanCodec.Encoder();
+        byte[] little = encode(encoder, bytes, ByteOrder.LITTLE_ENDIAN);
+        byte[] big = encode(encoder, bytes, ByteOrder.BIG_ENDIAN);
+        Assert.assertArrayEquals(big, little);
+
+        //the symbol count follows the code lengths, most significant byte first
+        Assert.assertEquals(bytes.length, ByteBuffer.wrap(little)
+                .getInt(HuffmanCode.ALPHABET_SIZE));
+
+        HuffmanCodec.Decoder decoder = new HuffmanCodec.Decoder();
+        Assert.assertArrayEquals(bytes, decode(decoder, little, bytes.length,
+                ByteOrder.BIG_ENDIAN));
+        Assert.assertArrayEquals(bytes, decode(decoder, big, bytes.length,
+                ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Frames written at an offset into a direct buffer decode into a
+     * direct buffer, and the positions move past exactly what was used
+     */
+    @Test
+    public void testDirectBuffersAtOffset() throws IOException {
+        byte[] bytes = BlockCompressorTest.randomBytes(5000, 41);
+        ByteBuffer src = ByteBuffer.allocateDirect(bytes.length + 20);
+        src.position(10);
+        src.put(bytes).flip().position(10);
+        ByteBuffer frame = ByteBuffer.allocateDirect(HuffmanCodec.maxFrameLength(bytes.length) + 7)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        frame.position(7);
+        int length = new HuffmanCodec.Encoder().encode(src, frame);
+        Assert.assertEquals(7 + length, frame.position());
+        Assert.assertEquals(src.limit(), src.position());
+
+        frame.flip().position(7);
+        ByteBuffer decoded = ByteBuffer.allocateDirect(bytes.length + 3);
+        decoded.position(3);
+        Assert.assertEquals(bytes.length, new HuffmanCodec.Decoder().decode(frame, decoded));
+        Assert.assertFalse(frame.hasRemaining());
+        decoded.flip().position(3);
+        Assert.assertArrayEquals(bytes, remaining(decoded));
+    }
+
+    /**
+     * Empty input, a lone symbol and byte 255 round-trip, and one decoder
+     * switches between frames with different codes
+     */
+    @Test
+    public void testFewSymbolsAndChangingCodes() throws IOException {
+        byte[] lone = new byte[500];
+        Arrays.fill(lone, (byte) 255);
+        byte[][] inputs = {new byte[0], {(byte) 255}, lone,
+                           BlockCompressorTest.randomBytes(2000, 42), lone, new byte[0]};
+        HuffmanCodec.Encoder encoder = new HuffmanCodec.Encoder();
+        HuffmanCodec.Decoder decoder = new HuffmanCodec.Decoder();
+        for (byte[] bytes : inputs) {
+            byte[] frame = encode(encoder, bytes, ByteOrder.BIG_ENDIAN);
+            Assert.assertArrayEquals(bytes, decode(decoder, frame, bytes.length,
+                    ByteOrder.BIG_ENDIAN));
+        }
+    }
+
+    /**
+     * Bytes whose codes all take the longest length stay within
+     * maxFrameLength
+     */
+    @Test
+    public void testMaxFrameLength() throws IOException {
+        //Fibonacci-like counts give the rarest symbols 15 bit codes
+        long[] counts = new long[HuffmanCode.ALPHABET_SIZE];
+        long previous = 1;
+        long current = 1;
+        for (int symbol = 0; symbol < 30; symbol++) {
+            counts[symbol] = current;
+            long next = previous + current;
+            previous = current;
+            current = next;
+        }
+        byte[] bytes = new byte[4000];
+        int used = 0;
+        for (int symbol = 0; symbol < 30 && used < bytes.length; symbol++) {
+            for (long i = 0; i < counts[symbol] && used < bytes.length; i++) {
+                bytes[used++] = (byte) symbol;
+            }
+        }
+        //the bytes are mostly the rarest of the symbols present
+        for (int i = 0; used < bytes.length; i++) {
+            bytes[used++] = (byte) (i % 2);
+        }
+        byte[] frame = encode(new HuffmanCodec.Encoder(), bytes, ByteOrder.BIG_ENDIAN);
+        Assert.assertTrue(frame.length <= HuffmanCodec.maxFrameLength(bytes.length));
+        Assert.assertArrayEquals(bytes, decode(new HuffmanCodec.Decoder(), frame,
+                bytes.length, ByteOrder.BIG_ENDIAN));
+    }
+
+    /**
+     * A destination too small for the largest frame is refused before
+     * anything is written
+     */
+    @Test
+    public void testEncodeOverflow() {
+        byte[] bytes = BlockCompressorTest.randomBytes(1000, 43);
+        ByteBuffer src = ByteBuffer.wrap(bytes);
+        ByteBuffer dst = ByteBuffer.allocate(HuffmanCodec.maxFrameLength(bytes.length) - 1);
+        try {
+            new HuffmanCodec.Encoder().encode(src, dst);
+            Assert.fail("encode wrote past the end of dst");
+        } catch (BufferOverflowException expected) {
+            Assert.assertEquals(0, src.position());
+            Assert.assertEquals(0, dst.position());
+        }
+    }
+
+    /**
+     * Frames cut short, with a count larger than the destination or with
+     * code lengths that are no code are refused
+     */
+    @Test
+    public void testMalformedFrames() {
+        byte[] bytes = BlockCompressorTest.randomBytes(1000, 44);
+        byte[] frame = encode(new HuffmanCodec.Encoder(), bytes, ByteOrder.BIG_ENDIAN);
+        byte[] tooLong = frame.clone();
+        tooLong[HuffmanCode.ALPHABET_SIZE + 2] = 0x7f;
+        byte[] badLength = frame.clone();
+        badLength[3] = 16;
+        byte[] oversubscribed = frame.clone();
+        Arrays.fill(oversubscribed, 0, HuffmanCode.ALPHABET_SIZE, (byte) 1);
+        byte[][] malformed = {Arrays.copyOf(frame, HuffmanCode.ALPHABET_SIZE + 3),
+                              tooLong, badLength, oversubscribed};
+        for (byte[] damaged : malformed) {
+            try {
+                new HuffmanCodec.Decoder().decode(ByteBuffer.wrap(damaged),
+                        ByteBuffer.allocate(bytes.length));
+                Assert.fail("decode accepted a malformed frame");
+            } catch (IOException expected) {
+                //the frame doesn't hold a code or doesn't fit
+            }
+        }
+    }
+
+    /**
+     * Buffers written to the writable channel, empty ones included, read
+     * back through the readable channel in pieces of any size
+     */
+    @Test
+    public void testChannels() throws IOException {
+        Random random = new Random(45);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream framed = new ByteArrayOutputStream();
+        WritableByteChannel writer = HuffmanCodec.newWritableChannel(
+                Channels.newChannel(framed));
+        for (int i = 0; i < 20; i++) {
+            byte[] bytes = BlockCompressorTest.randomBytes(random.nextInt(3000), i);
+            expected.write(bytes);
+            ByteBuffer src = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            Assert.assertEquals(bytes.length, writer.write(src));
+            Assert.assertFalse(src.hasRemaining());
+        }
+        writer.close();
+
+        ReadableByteChannel reader = HuffmanCodec.newReadableChannel(
+                Channels.newChannel(new ByteArrayInputStream(framed.toByteArray())));
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        ByteBuffer piece = ByteBuffer.allocate(1000);
+        piece.limit(1 + random.nextInt(1000));
+        while (reader.read(piece) >= 0) {
+            piece.flip();
+            read.write(remaining(piece));
+            piece.clear().limit(1 + random.nextInt(1000));
+        }
+        reader.close();
+        Assert.assertArrayEquals(expected.toByteArray(), read.toByteArray());
+    }
+
+    /**
+     * A framed channel cut inside a frame ends with an error, not with
+     * end of stream
+     */
+    @Test(expected = IOException.class)
+    public void testChannelCutShort() throws IOException {
+        ByteArrayOutputStream framed = new ByteArrayOutputStream();
+        WritableByteChannel writer = HuffmanCodec.newWritableChannel(
+                Channels.newChannel(framed));
+        writer.write(ByteBuffer.wrap(BlockCompressorTest.randomBytes(2000, 46)));
+        byte[] cut = Arrays.copyOf(framed.toByteArray(), framed.size() - 1);
+        ReadableByteChannel reader = HuffmanCodec.newReadableChannel(
+                Channels.newChannel(new ByteArrayInputStream(cut)));
+        ByteBuffer dst = ByteBuffer.allocate(4000);
+        while (reader.read(dst) >= 0) {
+            dst.clear();
+        }
+    }
+}
@@ -1,123 +1,401 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
 
+// A compressed name.short file is framed so damage is caught on reading:
+//   MAGIC (int) and VERSION (byte)
+//   CRC32C of the rest of the file (int), taking the padding count last
+//   size of the original file (long) and CRC32C of its bytes (int)
+//   HuffmanCode.ALPHABET_SIZE code lengths
+//   the bits, as BitOutputStream writes them (a padding count, then the codes)
+// The first checksum lets verify check a file at disk speed without
+// decoding it; the second checks the decoded bytes when decompressing.
 public class HuffmanCompressor {
+    private String inputName;
     private String filename;
+    private final List<CompressionListener> listeners = new ArrayList<>();
+    private boolean verbose = true;
 
-    public static final int CHAR_MAX = 255; // max char value
     public static final int MAKE_CODE = 1;
     public static final int COMPRESS = 2;
     public static final int DECOMPRESS = 3;
     public static final int ROUND_TRIP = 4;
 
+    public static final int MAGIC = 0x48554653; // "HUFS"
+    public static final int VERSION = 2;
+
+    private static final int FRAME_CHECKSUM_POSITION = 4 + 1;
+    // bytes from the start of the file up to the bits, padding count included
+    private static final int FRAME_SIZE = 4 + 1 + 4 + 8 + 4 + HuffmanCode.ALPHABET_SIZE + 1;
+    private static final int BUFFER_SIZE = 1 << 16; // bytes per write call
+    private static final long MAP_WINDOW = 1L << 30; // bytes mapped at once
+
+    // Works on any file; name.txt keeps its companions at name.short,
+    // name.code and name.new, while other files add those suffixes to
+    // their full name
     public HuffmanCompressor(String filename) {
-        if (!filename.endsWith(".txt")) {
-            throw new IllegalArgumentException(
-                    "This compressor only works on text files!");
+        if (filename.isEmpty()) {
+            throw new IllegalArgumentException("No file name given");
         }
-        this.filename = filename.split(".txt")[0];
+        this.inputName = filename;
+        this.filename = filename.endsWith(".txt")
+                ? filename.substring(0, filename.length() - ".txt".length())
+                : filename;
     }
 
-    public void makeCode() throws IOException {
-        System.out.println("I am about to make the Huffman code for "
-                + filename + ".txt...");
-        FileInputStream input = new FileInputStream(filename + ".txt");
-        int[] count = new int[CHAR_MAX];
-        int n = input.read();
-        while (n != -1) {
-            count[n]++;
-            n = input.read();
+    // Works on the compressed file of the given name, which must end in
+    // .short; name.short decompresses to name.new whatever name ends in,
+    // so name.txt.short gives name.txt.new
+    public static HuffmanCompressor forCompressedFile(String compressedName) {
+        if (!compressedName.endsWith(".short")) {
+            throw new IllegalArgumentException("Not a .short file: " + compressedName);
         }
+        String base = compressedName.substring(0, compressedName.length() - ".short".length());
+        HuffmanCompressor huffman = new HuffmanCompressor(compressedName);
+        huffman.inputName = base;
+        huffman.filename = base;
+        return huffman;
+    }
 
-        // Build the code; open the output file; save the code
-        System.out.println("\tI built up a frequency table of the " +
-                "characters in your file.");
-        System.out.println("\tNow, I'm going to call your HuffmanCode(int[]) " +
-                "constructor using that frequency table.");
-        HuffmanCode t = new HuffmanCode(count);
+    // Returns the name of the compressed file
+    public String getCompressedName() {
+        return filename + ".short";
+    }
+
+    // Returns the name of the file decompress(false) writes
+    public String getDecompressedName() {
+        return filename + ".new";
+    }
+
+    // Turns the progress messages on or off; they are on by default
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
 
-        System.out.println("\tOkay!  Now, I am going to save the code (using " +
+    // Adds a listener told about the phases and results of every compression
+    public void addListener(CompressionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CompressionListener listener) {
+        listeners.remove(listener);
+    }
+
+    public HuffmanCode makeCode() throws IOException {
+        log("I am about to make the Huffman code for "
+                + inputName + "...");
+        HuffmanCode t = this.buildCode(this.countBytes(null));
+
+        // Open the output file; save the code
+        log("\tOkay!  Now, I am going to save the code (using " +
                 "your save method) to the file " + filename +
                 ".code!");
         PrintStream output = new PrintStream(new File(filename + ".code"));
         t.save(output);
-        System.out.println("...I am done making the Huffman Code!");
+        output.close();
+        log("...I am done making the Huffman Code!");
+        return t;
+    }
+
+    // Counts all 256 byte values of the file, each window in parallel chunks;
+    // the bytes are added to the checksum too unless it is null
+    private long[] countBytes(Checksum checksum) throws IOException {
+        FrequencyCounter count = new FrequencyCounter();
+        try (FileChannel input = FileChannel.open(Paths.get(inputName))) {
+            long size = input.size();
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                MappedByteBuffer window = map(input, position, size);
+                if (checksum != null) {
+                    checksum.update(window.duplicate());
+                }
+                count.add(FrequencyCounter.count(window, ForkJoinPool.commonPool()));
+            }
+        }
+        return count.getCounts();
+    }
+
+    // Builds the code from the counts of the file
+    private HuffmanCode buildCode(long[] counts) {
+        log("\tI built up a frequency table of the " +
+                "characters in your file.");
+        log("\tNow, I'm going to call your HuffmanCode(int[]) " +
+                "constructor using that frequency table.");
+        return new HuffmanCode(counts);
     }
 
     public void compress(boolean debug) throws IOException {
-        System.out.println("I am about to attempt to COMPRESS "
-                + filename + ".txt:");
+        log("I am about to attempt to COMPRESS "
+                + inputName + ":");
+        long[] phaseNanos = new long[CompressionMetrics.Phase.values().length];
+        long start = System.nanoTime();
+
         /* We must make the code before we can compress... */
-        this.makeCode();
-        System.out.println("\tNow that I have the Huffman Code, I am going " +
-                "to use the huffman code file created by");
+        CRC32C checksum = new CRC32C();
+        long[] counts = this.countBytes(checksum);
+        start = endPhase(CompressionMetrics.Phase.COUNT, start, phaseNanos);
+        HuffmanCode t = this.buildCode(counts);
+        start = endPhase(CompressionMetrics.Phase.BUILD, start, phaseNanos);
+        log("\tNow that I have the Huffman Code, I am going " +
+                "to use the code table built by");
 
         String compressedFileName = debug ? filename + ".short.debug" : filename + ".short";
 
-        System.out.println("\tyour save() method to compress the contents " +
+        log("\tyour HuffmanCode(int[]) constructor to compress the contents " +
                 "into " + compressedFileName + "!");
 
-        String[] codes = new String[CHAR_MAX];
-        Scanner codeInput = new Scanner(new File(filename + ".code"));
-        while (codeInput.hasNextLine()) {
-            int n = Integer.parseInt(codeInput.nextLine());
-            codes[n] = codeInput.nextLine();
-        }
-
-        // Open file to be compressed; open output file
-        FileInputStream input = new FileInputStream(this.filename + ".txt");
-        BitOutputStream output = debug ? new BitOutputStream(this.filename) :
-                                         new BitOutputStream(new PrintStream(this.filename + ".short"));
-
-        // Do the compression
-        int n = input.read();
-        while (n != -1) {
-            if (codes[n] == null) {
-                System.out.println("Your code file has no code for " + n +
-                        " (the character '" + (char) n + "')");
-                System.out.println("exiting...");
-                System.exit(1);
+        long[] words = t.getCodeWords();
+        byte[] lengths = t.getCodeLengths();
+
+        // Map file to be compressed; open output file, which starts with
+        // the code lengths so that no separate code file is needed. Both
+        // are closed even if compressing fails part way
+        long size;
+        BitOutputStream output;
+        CRC32C frameChecksum = new CRC32C();
+        try (FileChannel input = FileChannel.open(Paths.get(this.inputName))) {
+            size = input.size();
+            output = openOutput(t, size, (int) checksum.getValue(), frameChecksum, debug);
+            try {
+                // Do the compression, one mapped window at a time
+                for (long position = 0; position < size; position += MAP_WINDOW) {
+                    MappedByteBuffer window = map(input, position, size);
+                    while (window.hasRemaining()) {
+                        int n = window.get() & 0xff;
+                        output.writeBits(words[n], lengths[n]);
+                    }
+                }
+                start = endPhase(CompressionMetrics.Phase.ENCODE, start, phaseNanos);
+            } finally {
+                output.close();
             }
-            for (int i = 0; i < codes[n].length(); i++) {
-                output.write(codes[n].charAt(i) - '0');
+        }
+        if (!debug) {
+            writeFrameChecksum((int) frameChecksum.getValue());
+        }
+        endPhase(CompressionMetrics.Phase.FLUSH, start, phaseNanos);
+        log("...I am done compressing the file");
+
+        if (!listeners.isEmpty()) {
+            long outputSize = Files.size(Paths.get(compressedFileName));
+            double bitsPerSymbol = size == 0 ? 0
+                    : (double) CompressionMetrics.codedBits(counts, lengths) / size;
+            CompressionMetrics metrics = new CompressionMetrics(inputName, size,
+                    outputSize, phaseNanos, bitsPerSymbol,
+                    CompressionMetrics.entropy(counts), output.peakBufferedBytes());
+            for (CompressionListener listener : listeners) {
+                listener.compressed(metrics);
             }
-            n = input.read();
         }
-        input.close();
-        output.close();
-        System.out.println("...I am done compressing the file");
+    }
+
+    // Opens the bit stream the compressed file is written to, starting it
+    // with the frame and the code unless debugging; everything after the
+    // frame checksum is added to frameChecksum as it is written
+    private BitOutputStream openOutput(HuffmanCode t, long size, int checksum,
+                                       Checksum frameChecksum, boolean debug)
+            throws IOException {
+        if (debug) {
+            return new BitOutputStream(this.filename);
+        }
+        FileChannel channel = FileChannel.open(
+                Paths.get(this.filename + ".short"),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(header);
+            data.writeInt(MAGIC);
+            data.writeByte(VERSION);
+            data.writeInt(0); // frame checksum, filled in once the bits are out
+            data.writeLong(size);
+            data.writeInt(checksum);
+            t.writeHeader(data);
+            byte[] bytes = header.toByteArray();
+            frameChecksum.update(bytes, FRAME_CHECKSUM_POSITION + 4,
+                    bytes.length - FRAME_CHECKSUM_POSITION - 4);
+            header.writeTo(Channels.newOutputStream(channel));
+            return new BitOutputStream(channel, frameChecksum);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Fills in the frame checksum of the compressed file once the rest of
+    // it has been written
+    private void writeFrameChecksum(int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(this.filename + ".short"),
+                StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.allocate(4).putInt(0, value);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, FRAME_CHECKSUM_POSITION + bytes.position());
+            }
+        }
+    }
+
+    // Records the time since start as the given phase and tells the
+    // listeners; returns the time the next phase starts
+    private long endPhase(CompressionMetrics.Phase phase, long start, long[] phaseNanos) {
+        long end = System.nanoTime();
+        phaseNanos[phase.ordinal()] = end - start;
+        for (CompressionListener listener : listeners) {
+            listener.phaseCompleted(inputName, phase, end - start);
+        }
+        return end;
+    }
+
+    // Prints a progress message unless they have been turned off
+    private void log(String message) {
+        if (verbose) {
+            System.out.println(message);
+        }
+    }
+
+    // Maps the part of the file from position on that fits in one window;
+    // files over 2 GB are handled as a series of windows
+    private static MappedByteBuffer map(FileChannel input, long position, long size)
+            throws IOException {
+        long length = Math.min(MAP_WINDOW, size - position);
+        return input.map(FileChannel.MapMode.READ_ONLY, position, length);
     }
 
     public void decompress(boolean printToConsole) throws IOException {
-        System.out.println("I am about to attempt to DECOMPRESS " +
+        log("I am about to attempt to DECOMPRESS " +
                 filename + ".short:");
 
-        System.out.println("\tTo do this, I must first read in the huffman " +
+        log("\tTo do this, I must first read in the huffman " +
                 "code used to compress the file.");
-        System.out.println("\tI will use your HuffmanCode(Scanner) " +
-                "constructor!");
-        // Open code file and construct tree
-        Scanner codeInput = new Scanner(new File(this.filename + ".code"));
-        HuffmanCode t = new HuffmanCode(codeInput);
-
-        // Open compressed file; open output
-        BitInputStream input = new BitInputStream(this.filename + ".short");
-        PrintStream output = System.out;
-        if (!printToConsole) {
-            System.out.println("\tNow, I will decompress the file using your " +
-                    "translate() method and save");
-            System.out.println("\tthe output into " + this.filename + ".new");
-            output = new PrintStream(new File(this.filename + ".new"));
-        }
-        else {
-            System.out.println("\tNow, I will decompress the file using your " +
-                    "translate() method and display it on the console");
-        }
-
-        // Decompress the file
-        t.translate(input, output);
-        output.close();
-        System.out.println("...I am done decompressing the file");
+        log("\tI will use the code lengths stored at the " +
+                "front of the file!");
+        // Check the frame first, so a damaged file writes nothing; then
+        // open compressed file, which is closed even if decoding fails
+        verify();
+        try (FileInputStream compressed = new FileInputStream(this.filename + ".short")) {
+            if (printToConsole) {
+                log("\tNow, I will decompress the file and display it on the console");
+                // System.out swallows write errors, so they are looked for
+                // once the bytes are out
+                decode(compressed, System.out);
+                System.out.flush();
+                if (System.out.checkError()) {
+                    throw new IOException("Error writing to the console");
+                }
+            } else {
+                log("\tNow, I will decompress the file and save");
+                log("\tthe output into " + this.filename + ".new");
+                decodeToFile(compressed, Paths.get(this.filename + ".new"));
+            }
+        }
+        log("...I am done decompressing the file");
+    }
+
+    // Decodes the compressed input into the named file, which is deleted
+    // again if decoding or writing fails part way
+    private static void decodeToFile(InputStream compressed, Path file) throws IOException {
+        OutputStream output = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+        try (output) {
+            decode(compressed, output);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    // Checks the compressed file against its frame checksum, reading it
+    // once without decoding it; returns the size of the original file, or
+    // throws IOException if the compressed file is damaged
+    public long verify() throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(this.filename + ".short"))) {
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+            while (frame.hasRemaining()) {
+                if (channel.read(frame) < 0) {
+                    throw new IOException(frame.position() < 4 + 1
+                            ? "Not a compressed file" : "Compressed file ends early");
+                }
+            }
+            frame.flip();
+            if (frame.getInt() != MAGIC) {
+                throw new IOException("Not a compressed file");
+            }
+            int version = frame.get() & 0xff;
+            if (version != VERSION) {
+                throw new IOException("Unsupported compressed file version: " + version);
+            }
+            int expected = frame.getInt();
+            long size = frame.getLong(frame.position());
+            CRC32C crc = new CRC32C();
+            crc.update(frame.limit(FRAME_SIZE - 1));
+            int padding = frame.limit(FRAME_SIZE).get();
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                crc.update(buffer.flip());
+                buffer.clear();
+            }
+            crc.update(padding);
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("Checksum mismatch");
+            }
+            if (size < 0 || padding < 0 || padding > 7) {
+                throw new IOException("Bad frame");
+            }
+            return size;
+        }
+    }
+
+    // Reads the frame of a compressed file, takes the code it describes
+    // from the cache and decodes the original bytes to output, checking
+    // their size and checksum; returns the size
+    private static long decode(InputStream input, OutputStream output) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a compressed file");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported compressed file version: " + version);
+        }
+        data.readInt(); // frame checksum, which verify checks
+        long size = data.readLong();
+        int checksum = data.readInt();
+        if (size < 0) {
+            throw new IOException("Bad original size: " + size);
+        }
+        HuffmanCode t;
+        try {
+            t = CodeCache.shared().readHeader(data);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad code lengths", e);
+        }
+
+        BitInputStream bits = new BitInputStream(data);
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (long left = size; left > 0; left -= buffer.length) {
+            int count = (int) Math.min(buffer.length, left);
+            int decoded = t.decode(bits, buffer, 0, count);
+            crc.update(buffer, 0, decoded);
+            output.write(buffer, 0, decoded);
+            if (decoded < count) {
+                throw new IOException("Compressed file ends early");
+            }
+        }
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Checksum mismatch");
+        }
+        return size;
     }
 
     public static void main(String[] args) throws IOException {
@@ -129,10 +407,9 @@ public class HuffmanCompressor {
         String filename;
 
         do {
-            System.out.print("Which file would you like to work with (it " +
-                    "must be a txt file)? ");
+            System.out.print("Which file would you like to work with? ");
             filename = console.nextLine().trim();
-        } while (!filename.endsWith(".txt"));
+        } while (filename.isEmpty());
 
         System.out.println();
 
@@ -172,6 +449,7 @@ public class HuffmanCompressor {
         }
 
         HuffmanCompressor huffman = new HuffmanCompressor(filename);
+        huffman.addListener(CompressionStats.register());
         switch (choice) {
             case 1: huffman.makeCode(); break;
             case 2: huffman.compress(debug); break;
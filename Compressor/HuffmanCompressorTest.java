@@ -0,0 +1,359 @@
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+public class HuffmanCompressorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes the given bytes to a file, compresses it to a .short file and
+     * decompresses that again
+     * @param bytes the contents of the file
+     * @return the compressor, for finding the files it wrote
+     */
+    private HuffmanCompressor roundTrip(byte[] bytes) throws IOException {
+        File input = folder.newFile();
+        Files.write(input.toPath(), bytes);
+        HuffmanCompressor huffman = new HuffmanCompressor(input.getPath());
+        huffman.setVerbose(false);
+        huffman.compress(false);
+        huffman.decompress(false);
+        Assert.assertArrayEquals(bytes,
+                Files.readAllBytes(Paths.get(huffman.getDecompressedName())));
+        return huffman;
+    }
+
+    /**
+     * The .short file is the fixed frame, one code length per byte value
+     * and the bits alone, whatever the input holds: no text code, and no
+     * separate .code file
+     */
+    @Test
+    public void testCompactHeader() throws IOException {
+        int frame = 4 + 1 + 4 + 8 + 4 + HuffmanCode.ALPHABET_SIZE + 1;
+        byte[] one = new byte[1000];
+        Arrays.fill(one, (byte) 255);
+        Random random = new Random(5);
+        byte[] many = new byte[50000];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = (byte) random.nextInt(256);
+        }
+        for (byte[] bytes : new byte[][] {new byte[0], one, many}) {
+            HuffmanCompressor huffman = roundTrip(bytes);
+            long[] counts = new long[HuffmanCode.ALPHABET_SIZE];
+            for (byte b : bytes) {
+                counts[b & 0xff]++;
+            }
+            byte[] lengths = new HuffmanCode(counts).getCodeLengths();
+            long bits = CompressionMetrics.codedBits(counts, lengths);
+
+            byte[] compressed = Files.readAllBytes(Paths.get(huffman.getCompressedName()));
+            Assert.assertEquals(frame + (bits + 7) / 8, compressed.length);
+            Assert.assertArrayEquals(lengths, Arrays.copyOfRange(compressed,
+                    frame - 1 - HuffmanCode.ALPHABET_SIZE, frame - 1));
+            String code = huffman.getCompressedName().replace(".short", ".code");
+            Assert.assertFalse(Files.exists(Paths.get(code)));
+        }
+    }
+
+    /**
+     * Codes are assigned from the lengths alone, shortest first and in
+     * symbol order within a length, so the lengths are all a reader needs
+     */
+    @Test
+    public void testCanonicalWords() {
+        byte[] lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+        lengths['d'] = 3;
+        lengths['c'] = 3;
+        lengths['b'] = 2;
+        lengths['a'] = 1;
+        long[] words = new long[HuffmanCode.ALPHABET_SIZE];
+        HuffmanCode.canonicalWords(lengths, words);
+        //first bit lowest: a = 0, b = 10, c = 110, d = 111
+        Assert.assertEquals(0b0, words['a']);
+        Assert.assertEquals(0b01, words['b']);
+        Assert.assertEquals(0b011, words['c']);
+        Assert.assertEquals(0b111, words['d']);
+        Assert.assertEquals(0, words['e']);
+        Assert.assertArrayEquals(words, new HuffmanCode(lengths).getCodeWords());
+    }
+
+    /**
+     * Lengths that can't all have a code, as in a damaged header, are
+     * refused rather than decoded to the wrong bytes
+     */
+    @Test
+    public void testLengthsMustFormPrefixCode() throws IOException {
+        byte[] lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+        lengths['a'] = 1;
+        lengths['b'] = 1;
+        lengths['c'] = 1;
+        try {
+            HuffmanCode.readHeader(new ByteArrayInputStream(lengths));
+            Assert.fail("read three codes of one bit");
+        } catch (IllegalArgumentException expected) {
+            //only two one bit codes exist
+        }
+        try {
+            HuffmanCode.readHeader(new ByteArrayInputStream(new byte[10]));
+            Assert.fail("read a header cut short");
+        } catch (IOException expected) {
+            //the header ends early
+        }
+    }
+
+    /**
+     * A .txt file keeps its companions at the name without the suffix
+     */
+    @Test
+    public void testTextFileNames() throws IOException {
+        File input = folder.newFile("notes.txt");
+        Files.write(input.toPath(), "hello, hello".getBytes("US-ASCII"));
+        HuffmanCompressor huffman = new HuffmanCompressor(input.getPath());
+        huffman.setVerbose(false);
+        huffman.compress(false);
+        huffman.decompress(false);
+
+        String base = new File(folder.getRoot(), "notes").getPath();
+        Assert.assertEquals(base + ".short", huffman.getCompressedName());
+        Assert.assertEquals(base + ".new", huffman.getDecompressedName());
+        Assert.assertEquals("hello, hello",
+                new String(Files.readAllBytes(Paths.get(base + ".new")), "US-ASCII"));
+    }
+
+    /**
+     * Any file compresses, whatever its name or bytes: files not ending in
+     * .txt add the suffixes to their full name, and bytes text handling
+     * would change come back exactly
+     */
+    @Test
+    public void testBinaryFiles() throws IOException {
+        byte[] bytes = new byte[30000];
+        new Random(11).nextBytes(bytes);
+        for (int i = 0; i < bytes.length; i += 5) {
+            bytes[i] = (byte) "\0\r\n\u001a\u00ff".charAt(i % 5);
+        }
+        for (String name : new String[] {"image.bin", "noextension", "archive.txt.gz"}) {
+            File input = folder.newFile(name);
+            Files.write(input.toPath(), bytes);
+            HuffmanCompressor huffman = new HuffmanCompressor(input.getPath());
+            huffman.setVerbose(false);
+            huffman.compress(false);
+            huffman.decompress(false);
+
+            Assert.assertEquals(input.getPath() + ".short", huffman.getCompressedName());
+            Assert.assertEquals(input.getPath() + ".new", huffman.getDecompressedName());
+            Assert.assertArrayEquals(bytes,
+                    Files.readAllBytes(Paths.get(input.getPath() + ".new")));
+        }
+    }
+
+    /**
+     * The code lengths written as a header give back the same canonical code
+     */
+    @Test
+    public void testHeaderRoundTrip() throws IOException {
+        long[] counts = new long[HuffmanCode.ALPHABET_SIZE];
+        counts['a'] = 10;
+        counts['b'] = 3;
+        counts[255] = 7;
+        HuffmanCode code = new HuffmanCode(counts);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        code.writeHeader(header);
+        Assert.assertEquals(HuffmanCode.ALPHABET_SIZE, header.size());
+
+        HuffmanCode read = HuffmanCode.readHeader(new ByteArrayInputStream(header.toByteArray()));
+        Assert.assertArrayEquals(code.getCodeLengths(), read.getCodeLengths());
+        Assert.assertArrayEquals(code.getCodeWords(), read.getCodeWords());
+    }
+
+    /**
+     * Every flipped byte of a .short file, in the frame, the code lengths,
+     * the padding count or the bits, is caught by verify and by
+     * decompressing
+     */
+    @Test
+    public void testVerifyRejectsFlippedByte() throws IOException {
+        Random random = new Random(6);
+        byte[] bytes = new byte[2000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(20));
+        }
+        HuffmanCompressor huffman = roundTrip(bytes);
+        Assert.assertEquals(bytes.length, huffman.verify());
+
+        Path compressed = Paths.get(huffman.getCompressedName());
+        byte[] intact = Files.readAllBytes(compressed);
+        Files.delete(Paths.get(huffman.getDecompressedName()));
+        int pad = 4 + 1 + 4 + 8 + 4 + HuffmanCode.ALPHABET_SIZE;
+        for (int position = 0; position < intact.length; position += 7) {
+            damageAndCheck(huffman, compressed, intact, position);
+        }
+        damageAndCheck(huffman, compressed, intact, pad);
+        damageAndCheck(huffman, compressed, intact, intact.length - 1);
+    }
+
+    /**
+     * Writes the compressed file with the given byte flipped and checks
+     * that verify and decompress both refuse it
+     */
+    private static void damageAndCheck(HuffmanCompressor huffman, Path compressed,
+                                       byte[] intact, int position) throws IOException {
+        byte[] damaged = intact.clone();
+        damaged[position] ^= 0x04;
+        Files.write(compressed, damaged);
+        try {
+            huffman.verify();
+            Assert.fail("verify accepted a flipped byte at " + position);
+        } catch (IOException expected) {
+            //the frame or the frame checksum doesn't match
+        }
+        try {
+            huffman.decompress(false);
+            Assert.fail("decompress accepted a flipped byte at " + position);
+        } catch (IOException expected) {
+            //the frame or the frame checksum doesn't match
+        }
+        Assert.assertFalse(Files.exists(Paths.get(huffman.getDecompressedName())));
+    }
+
+    /**
+     * verify checks the frame checksum without decoding, so a file whose
+     * frame is intact but whose bytes were compressed wrong, here modelled
+     * by a wrong original checksum with the frame checksum made to match,
+     * verifies and is only caught by decompressing
+     */
+    @Test
+    public void testVerifyDoesNotDecode() throws IOException {
+        byte[] bytes = new byte[3000];
+        new Random(10).nextBytes(bytes);
+        HuffmanCompressor huffman = roundTrip(bytes);
+        Path compressed = Paths.get(huffman.getCompressedName());
+        byte[] damaged = Files.readAllBytes(compressed);
+        int dataChecksum = 4 + 1 + 4 + 8;
+        damaged[dataChecksum] ^= 0x01;
+        //the frame checksum covers what follows it, padding count last
+        int pad = dataChecksum + 4 + HuffmanCode.ALPHABET_SIZE;
+        CRC32C crc = new CRC32C();
+        crc.update(damaged, 9, pad - 9);
+        crc.update(damaged, pad + 1, damaged.length - pad - 1);
+        crc.update(damaged[pad]);
+        ByteBuffer.wrap(damaged).putInt(5, (int) crc.getValue());
+        Files.write(compressed, damaged);
+
+        Assert.assertEquals(bytes.length, huffman.verify());
+        try {
+            huffman.decompress(false);
+            Assert.fail("decompress accepted bytes that don't match their checksum");
+        } catch (IOException expected) {
+            Assert.assertEquals("Checksum mismatch", expected.getMessage());
+            Assert.assertFalse(Files.exists(Paths.get(huffman.getDecompressedName())));
+        }
+    }
+
+    /**
+     * A .short file cut short is caught rather than decoded in part
+     */
+    @Test
+    public void testDecompressRejectsTruncatedFile() throws IOException {
+        byte[] bytes = new byte[2000];
+        new Random(7).nextBytes(bytes);
+        HuffmanCompressor huffman = roundTrip(bytes);
+        Path compressed = Paths.get(huffman.getCompressedName());
+        byte[] intact = Files.readAllBytes(compressed);
+        for (int length : new int[] {0, 3, 100, intact.length / 2, intact.length - 1}) {
+            Files.write(compressed, Arrays.copyOf(intact, length));
+            try {
+                huffman.decompress(false);
+                Assert.fail("decompress accepted " + length + " of " + intact.length + " bytes");
+            } catch (IOException expected) {
+                //the file ends early
+            }
+        }
+    }
+
+    /**
+     * A damaged .short file leaves no partial .new file behind
+     */
+    @Test
+    public void testFailedDecompressLeavesNoOutput() throws IOException {
+        byte[] bytes = new byte[5000];
+        new Random(8).nextBytes(bytes);
+        HuffmanCompressor huffman = roundTrip(bytes);
+        Path compressed = Paths.get(huffman.getCompressedName());
+        Path decompressed = Paths.get(huffman.getDecompressedName());
+        Files.delete(decompressed);
+        byte[] intact = Files.readAllBytes(compressed);
+        Files.write(compressed, Arrays.copyOf(intact, intact.length - 100));
+        try {
+            huffman.decompress(false);
+            Assert.fail("decompress accepted a truncated file");
+        } catch (IOException expected) {
+            Assert.assertFalse(Files.exists(decompressed));
+        }
+    }
+
+    /**
+     * An error writing the .new file, here a full disk, is reported rather
+     * than swallowed, and what was written is deleted
+     */
+    @Test
+    public void testWriteErrorIsReported() throws IOException {
+        Path full = Paths.get("/dev/full");
+        Assume.assumeTrue(Files.exists(full));
+        byte[] bytes = new byte[200000];
+        new Random(9).nextBytes(bytes);
+        HuffmanCompressor huffman = roundTrip(bytes);
+        Path decompressed = Paths.get(huffman.getDecompressedName());
+        Files.delete(decompressed);
+        Files.createSymbolicLink(decompressed, full);
+        try {
+            huffman.decompress(false);
+            Assert.fail("decompress ignored a full disk");
+        } catch (IOException expected) {
+            Assert.assertFalse(Files.exists(decompressed, LinkOption.NOFOLLOW_LINKS));
+        }
+    }
+
+    /**
+     * An error writing to the console is reported rather than swallowed
+     */
+    @Test
+    public void testConsoleWriteErrorIsReported() throws IOException {
+        HuffmanCompressor huffman = roundTrip("to the console".getBytes("US-ASCII"));
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("closed");
+            }
+        }));
+        try {
+            huffman.decompress(true);
+            Assert.fail("decompress ignored a console that can't be written");
+        } catch (IOException expected) {
+            //the console reported an error
+        } finally {
+            System.setOut(console);
+        }
+    }
+}
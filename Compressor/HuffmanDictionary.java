@@ -0,0 +1,265 @@
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32C;
+
+/**
+ * A code trained once from a sample corpus and shared by many small
+ * payloads, so that no payload has to carry a table of its own. Every byte
+ * value gets a code, whether or not it appeared in the samples, so any
+ * payload can be encoded.
+ *
+ * A payload holds the dictionary ID (int), the symbol count (int) and the
+ * bits packed first bit lowest, padded with 0's to a whole byte. Its ints
+ * are big endian whatever the order of the buffer it is written to or read
+ * from. A saved dictionary holds MAGIC (int), VERSION (byte), the ID (int),
+ * ALPHABET_SIZE code lengths and the CRC32C of all of those (int).
+ *
+ * A dictionary never changes once built, and builds its decoding table up
+ * front, so one instance can be shared by any number of threads.
+ */
+public class HuffmanDictionary {
+
+    //first bytes of a saved dictionary, "HUFD", and the format they announce
+    public static final int MAGIC = 0x48554644;
+    public static final int VERSION = 1;
+
+    //bytes in front of the bits of a payload: ID and symbol count
+    public static final int PAYLOAD_HEADER_SIZE = 4 + 4;
+
+    private static final int ALPHABET_SIZE = HuffmanCode.ALPHABET_SIZE;
+    private static final int MAX_LENGTH = HuffmanCode.MAX_CODE_LENGTH;
+
+    private final int id;
+    private final byte[] lengths;
+    private final long[] words = new long[ALPHABET_SIZE];
+    private final short[] table = new short[1 << MAX_LENGTH];   //see HuffmanCodec.fillTable
+
+    /**
+     * New dictionary with the given code lengths
+     * Pre: every byte value has a length from 1 to MAX_CODE_LENGTH and the
+     *      lengths form a prefix code
+     *
+     * @param id      the ID written into every payload
+     * @param lengths the code length of each byte value
+     */
+    public HuffmanDictionary(int id, byte[] lengths) {
+        if (lengths.length != ALPHABET_SIZE) {
+            throw new IllegalArgumentException("Need " + ALPHABET_SIZE + " code lengths");
+        }
+        for (byte length : lengths) {
+            if (length < 1 || length > MAX_LENGTH) {
+                throw new IllegalArgumentException("Illegal code length: " + length);
+            }
+        }
+        this.id = id;
+        this.lengths = lengths.clone();
+        HuffmanCode.canonicalWords(this.lengths, words);
+        HuffmanCodec.fillTable(this.lengths, words, table);
+    }
+
+    /**
+     * Trains a dictionary on the given samples
+     * Pre: none; with no samples every byte value gets the same length
+     *
+     * @param id      the ID of the new dictionary
+     * @param samples payloads typical of those to be compressed
+     * @return the trained dictionary
+     */
+    public static HuffmanDictionary train(int id, Iterable<byte[]> samples) {
+        FrequencyCounter counter = new FrequencyCounter();
+        for (byte[] sample : samples) {
+            counter.update(sample, 0, sample.length);
+        }
+        return train(id, counter.getCounts());
+    }
+
+    /**
+     * Trains a dictionary on byte counts gathered from a sample corpus
+     * Pre: counts has ALPHABET_SIZE non-negative entries
+     *
+     * @param id     the ID of the new dictionary
+     * @param counts how often each byte value occurs in the corpus
+     * @return the trained dictionary
+     */
+    public static HuffmanDictionary train(int id, long[] counts) {
+        //one extra occurrence of every value keeps unseen bytes encodable
+        long[] frequencies = new long[ALPHABET_SIZE];
+        for (int i = 0; i < ALPHABET_SIZE; i++) {
+            frequencies[i] = counts[i] + 1;
+        }
+        byte[] lengths = new byte[ALPHABET_SIZE];
+        new CodeLengthBuilder().build(frequencies, MAX_LENGTH, lengths);
+        return new HuffmanDictionary(id, lengths);
+    }
+
+    //returns the ID written into every payload
+    public int getId() {
+        return id;
+    }
+
+    //returns the code length of each byte value
+    public byte[] getCodeLengths() {
+        return lengths.clone();
+    }
+
+    /**
+     * Returns the most bytes a payload of count bytes can take
+     */
+    public static int maxPayloadLength(int count) {
+        return PAYLOAD_HEADER_SIZE + (int) (((long) count * MAX_LENGTH + 7) / 8);
+    }
+
+    /**
+     * Encodes the remaining bytes of src as one payload into dst
+     * Pre: dst has at least maxPayloadLength(src.remaining()) bytes left
+     * Post: src's position is at its limit and dst's position is just past
+     *       the payload; throws BufferOverflowException if dst is too small,
+     *       leaving both positions unchanged
+     *
+     * @param src the bytes to encode
+     * @param dst where the payload is written
+     * @return the length of the payload
+     */
+    public int encode(ByteBuffer src, ByteBuffer dst) {
+        int count = src.remaining();
+        if (dst.remaining() < maxPayloadLength(count)) {
+            throw new BufferOverflowException();
+        }
+        int start = dst.position();
+        HuffmanCodec.putInt(dst, id);
+        HuffmanCodec.putInt(dst, count);
+        HuffmanCodec.pack(src, dst, words, lengths);
+        return dst.position() - start;
+    }
+
+    /**
+     * Encodes count bytes of the given array as one payload
+     * Pre: 0 <= offset, offset + count <= bytes.length
+     *
+     * @return the payload
+     */
+    public byte[] encode(byte[] bytes, int offset, int count) {
+        ByteBuffer payload = ByteBuffer.allocate(maxPayloadLength(count));
+        encode(ByteBuffer.wrap(bytes, offset, count), payload);
+        byte[] result = new byte[payload.position()];
+        payload.flip().get(result);
+        return result;
+    }
+
+    /**
+     * Decodes one payload from src into dst
+     * Pre: src is positioned at the start of a payload
+     * Post: src's position is just past the payload and dst's position is
+     *       past the decoded bytes
+     *
+     * @param src holds the payload
+     * @param dst where the decoded bytes are written
+     * @return the number of decoded bytes
+     * @throws IOException if the payload was encoded with another
+     *                     dictionary, is malformed or doesn't fit in dst
+     */
+    public int decode(ByteBuffer src, ByteBuffer dst) throws IOException {
+        if (src.remaining() < PAYLOAD_HEADER_SIZE) {
+            throw new IOException("Payload is too short");
+        }
+        ByteBuffer header = src.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int payloadId = header.getInt();
+        if (payloadId != id) {
+            throw new IOException("Payload needs dictionary " + payloadId
+                    + ", not " + id);
+        }
+        int count = header.getInt();
+        if (count < 0 || count > dst.remaining()) {
+            throw new IOException("Payload of " + count + " bytes doesn't fit");
+        }
+        src.position(src.position() + PAYLOAD_HEADER_SIZE);
+        HuffmanCodec.unpack(src, dst, count, table);
+        return count;
+    }
+
+    /**
+     * Decodes one payload
+     *
+     * @return the original bytes
+     * @throws IOException if the payload was encoded with another
+     *                     dictionary or is malformed
+     */
+    public byte[] decode(byte[] payload) throws IOException {
+        if (payload.length < PAYLOAD_HEADER_SIZE) {
+            throw new IOException("Payload is too short");
+        }
+        int count = ByteBuffer.wrap(payload).getInt(4);
+        if (count < 0 || count > 8L * (payload.length - PAYLOAD_HEADER_SIZE)) {
+            throw new IOException("Payload is malformed");
+        }
+        byte[] bytes = new byte[count];
+        decode(ByteBuffer.wrap(payload), ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    /**
+     * Returns the ID of the dictionary the payload in src was encoded with
+     * Post: src's position is unchanged
+     *
+     * @throws IOException if src is too short to hold a payload
+     */
+    public static int payloadId(ByteBuffer src) throws IOException {
+        if (src.remaining() < PAYLOAD_HEADER_SIZE) {
+            throw new IOException("Payload is too short");
+        }
+        return src.duplicate().order(ByteOrder.BIG_ENDIAN).getInt();
+    }
+
+    /**
+     * Writes this dictionary to output
+     * Post: output is flushed but not closed
+     */
+    public void save(OutputStream output) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeInt(id);
+        data.write(lengths);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.toByteArray());
+        data.writeInt((int) crc.getValue());
+        bytes.writeTo(output);
+        output.flush();
+    }
+
+    /**
+     * Reads a dictionary written by save
+     * Post: input is positioned just past the dictionary
+     *
+     * @throws IOException if input doesn't hold an intact dictionary
+     */
+    public static HuffmanDictionary load(InputStream input) throws IOException {
+        byte[] bytes = new byte[4 + 1 + 4 + ALPHABET_SIZE];
+        new DataInputStream(input).readFully(bytes);
+        int checksum = new DataInputStream(input).readInt();
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        if (data.getInt() != MAGIC) {
+            throw new IOException("Not a dictionary");
+        }
+        int version = data.get() & 0xff;
+        if (version != VERSION) {
+            throw new IOException("Unsupported dictionary version: " + version);
+        }
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Dictionary is corrupt");
+        }
+        int id = data.getInt();
+        byte[] lengths = new byte[ALPHABET_SIZE];
+        data.get(lengths);
+        try {
+            return new HuffmanDictionary(id, lengths);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Dictionary is malformed: " + e.getMessage());
+        }
+    }
+}
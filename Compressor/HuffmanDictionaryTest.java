@@ -0,0 +1,198 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class HuffmanDictionaryTest {
+
+    /**
+     * Returns short JSON-like records, the kind of payload a shared
+     * dictionary is for
+     */
+    private static List<byte[]> records(int count) {
+        List<byte[]> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String record = "{\"id\":" + i + ",\"name\":\"user" + (i * 7 % 13)
+                    + "\",\"active\":" + (i % 3 == 0) + "}";
+            records.add(record.getBytes(StandardCharsets.US_ASCII));
+        }
+        return records;
+    }
+
+    /**
+     * Payloads of bytes never seen in training still round-trip, as every
+     * byte value gets a code, and seen bytes get shorter codes
+     */
+    @Test
+    public void testUnseenBytes() throws IOException {
+        HuffmanDictionary dictionary = HuffmanDictionary.train(7, records(200));
+        byte[] lengths = dictionary.getCodeLengths();
+        Assert.assertTrue(lengths['"'] < lengths[0]);
+
+        byte[] every = new byte[HuffmanCode.ALPHABET_SIZE];
+        for (int i = 0; i < every.length; i++) {
+            every[i] = (byte) i;
+        }
+        for (byte[] bytes : new byte[][] {new byte[0], {(byte) 255}, every,
+                                          records(1).get(0)}) {
+            byte[] payload = dictionary.encode(bytes, 0, bytes.length);
+            Assert.assertTrue(payload.length <= HuffmanDictionary.maxPayloadLength(bytes.length));
+            Assert.assertArrayEquals(bytes, dictionary.decode(payload));
+        }
+    }
+
+    /**
+     * A payload written into a little endian buffer reads back from a big
+     * endian one, and its ID and count are big endian in the bytes
+     */
+    @Test
+    public void testByteOrderIndependent() throws IOException {
+        HuffmanDictionary dictionary = HuffmanDictionary.train(0x01020304, records(50));
+        byte[] bytes = records(3).get(2);
+        ByteBuffer little = ByteBuffer.allocate(HuffmanDictionary.maxPayloadLength(bytes.length))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        dictionary.encode(ByteBuffer.wrap(bytes), little);
+        little.flip();
+        byte[] payload = new byte[little.remaining()];
+        little.duplicate().get(payload);
+        Assert.assertArrayEquals(dictionary.encode(bytes, 0, bytes.length), payload);
+        Assert.assertEquals(1, payload[0]);
+        Assert.assertEquals(bytes.length, ByteBuffer.wrap(payload).getInt(4));
+
+        Assert.assertEquals(0x01020304, HuffmanDictionary.payloadId(little));
+        ByteBuffer decoded = ByteBuffer.allocate(bytes.length);
+        Assert.assertEquals(bytes.length, dictionary.decode(little, decoded));
+        Assert.assertFalse(little.hasRemaining());
+        Assert.assertArrayEquals(bytes, decoded.array());
+
+        ByteBuffer big = ByteBuffer.wrap(payload).order(ByteOrder.BIG_ENDIAN);
+        decoded.clear();
+        Assert.assertEquals(bytes.length, dictionary.decode(big, decoded));
+        Assert.assertArrayEquals(bytes, decoded.array());
+    }
+
+    /**
+     * Payloads packed back to back in one buffer decode one after another
+     */
+    @Test
+    public void testPayloadsBackToBack() throws IOException {
+        HuffmanDictionary dictionary = HuffmanDictionary.train(3, records(100));
+        List<byte[]> records = records(40);
+        ByteBuffer packed = ByteBuffer.allocate(40 * HuffmanDictionary.maxPayloadLength(100));
+        for (byte[] record : records) {
+            dictionary.encode(ByteBuffer.wrap(record), packed);
+        }
+        packed.flip();
+        for (byte[] record : records) {
+            ByteBuffer decoded = ByteBuffer.allocate(record.length);
+            dictionary.decode(packed, decoded);
+            Assert.assertArrayEquals(record, decoded.array());
+        }
+        Assert.assertFalse(packed.hasRemaining());
+    }
+
+    /**
+     * A saved dictionary loads with the same ID and code, and a damaged one
+     * is refused
+     */
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        HuffmanDictionary dictionary = HuffmanDictionary.train(42, records(100));
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        dictionary.save(saved);
+        HuffmanDictionary loaded = HuffmanDictionary.load(
+                new ByteArrayInputStream(saved.toByteArray()));
+        Assert.assertEquals(42, loaded.getId());
+        Assert.assertArrayEquals(dictionary.getCodeLengths(), loaded.getCodeLengths());
+
+        byte[] intact = saved.toByteArray();
+        for (int position = 0; position < intact.length; position += 5) {
+            byte[] damaged = intact.clone();
+            damaged[position] ^= 0x01;
+            try {
+                HuffmanDictionary.load(new ByteArrayInputStream(damaged));
+                Assert.fail("load accepted a flipped byte at " + position);
+            } catch (IOException expected) {
+                //the magic, version or checksum doesn't match
+            }
+        }
+    }
+
+    /**
+     * A payload is refused by a dictionary with another ID and when its
+     * count doesn't fit
+     */
+    @Test
+    public void testRejectsForeignPayloads() {
+        HuffmanDictionary first = HuffmanDictionary.train(1, records(10));
+        HuffmanDictionary second = HuffmanDictionary.train(2, records(10));
+        byte[] bytes = records(1).get(0);
+        byte[] payload = first.encode(bytes, 0, bytes.length);
+        byte[] huge = payload.clone();
+        huge[4] = 0x7f;
+        try {
+            second.decode(payload);
+            Assert.fail("decoded a payload of another dictionary");
+        } catch (IOException expected) {
+            //the IDs don't match
+        }
+        try {
+            first.decode(huge);
+            Assert.fail("decoded a payload whose count is too large");
+        } catch (IOException expected) {
+            //the count doesn't fit
+        }
+        try {
+            first.decode(ByteBuffer.wrap(payload), ByteBuffer.allocate(bytes.length - 1));
+            Assert.fail("decoded a payload into too small a buffer");
+        } catch (IOException expected) {
+            //the count doesn't fit
+        }
+    }
+
+    /**
+     * The registry decodes each payload with the dictionary it names, loads
+     * saved dictionaries, and refuses unknown IDs and clashing dictionaries
+     */
+    @Test
+    public void testRegistry() throws IOException {
+        HuffmanDictionary first = HuffmanDictionary.train(1, records(20));
+        HuffmanDictionary second = HuffmanDictionary.train(2,
+                Arrays.asList(new byte[] {1, 2, 3}, new byte[] {3, 3, 3}));
+        DictionaryRegistry registry = new DictionaryRegistry();
+        registry.register(first);
+        registry.register(first);
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        second.save(saved);
+        registry.load(new ByteArrayInputStream(saved.toByteArray()));
+
+        byte[] record = records(1).get(0);
+        Assert.assertArrayEquals(record, registry.decode(first.encode(record, 0, record.length)));
+        byte[] small = {3, 3, 1, 2};
+        byte[] payload = second.encode(small, 0, small.length);
+        ByteBuffer decoded = ByteBuffer.allocate(small.length);
+        Assert.assertEquals(small.length, registry.decode(ByteBuffer.wrap(payload), decoded));
+        Assert.assertArrayEquals(small, decoded.array());
+
+        try {
+            registry.get(3);
+            Assert.fail("found a dictionary never registered");
+        } catch (IOException expected) {
+            //no dictionary has that ID
+        }
+        try {
+            registry.register(HuffmanDictionary.train(1, records(5)));
+            Assert.fail("registered two dictionaries with the same ID");
+        } catch (IllegalArgumentException expected) {
+            //the ID is taken
+        }
+    }
+}
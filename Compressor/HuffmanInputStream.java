@@ -0,0 +1,108 @@
+import java.io.*;
+
+/**
+ * Decompresses a BlockCompressor container as it is read, one block at a
+ * time, so it can follow a stream written by HuffmanOutputStream while the
+ * writer is still going.
+ */
+public class HuffmanInputStream extends InputStream {
+
+    private final DataInputStream input;
+    private HuffmanCode code;       //code of the current block
+    private byte[] block = new byte[0];
+    private int position;           //index of the next byte of block
+    private int blocks;             //number of blocks read so far
+    private boolean started;        //true once the container header is read
+    private boolean done;           //true once the END tag has been read
+
+    /**
+     * New stream decompressing the container read from input
+     */
+    public HuffmanInputStream(InputStream input) {
+        this.input = new DataInputStream(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return block[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int piece = Math.min(length, block.length - position);
+        System.arraycopy(block, position, bytes, offset, piece);
+        position += piece;
+        return piece;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    //post: returns false if the container has ended, otherwise makes sure
+    //      there is an unread decoded byte
+    private boolean fill() throws IOException {
+        while (position == block.length) {
+            if (done) {
+                return false;
+            }
+            if (!started) {
+                BlockCompressor.readHeader(input);
+                started = true;
+            }
+            int tag = input.readUnsignedByte();
+            if (tag == BlockCompressor.END) {
+                done = true;
+                return false;
+            }
+            if (tag != BlockCompressor.BLOCK && tag != BlockCompressor.BLOCK_REUSE
+                    && tag != BlockCompressor.BLOCK_ORDER1) {
+                throw new IOException("Unknown block tag: " + tag);
+            }
+            int symbolCount = input.readInt();
+            int payloadLength = input.readInt();
+            int checksum = input.readInt();
+            byte[] lengths = null;
+            if (tag == BlockCompressor.BLOCK) {
+                lengths = new byte[HuffmanCode.ALPHABET_SIZE];
+                input.readFully(lengths);
+            } else if (tag == BlockCompressor.BLOCK_REUSE && code == null) {
+                throw new IOException("First block has no code to reuse");
+            }
+            if (symbolCount < 0 || payloadLength < 1) {
+                throw new IOException("Block " + blocks + " has a malformed header");
+            }
+            byte[] payload = new byte[payloadLength];
+            input.readFully(payload);
+            if (BlockCompressor.checksum(lengths, payload) != checksum) {
+                throw new IOException("Block " + blocks + " is corrupt");
+            }
+            if (tag == BlockCompressor.BLOCK_ORDER1) {
+                block = BlockDecompressor.decodeOrder1Block(payload, symbolCount);
+            } else {
+                if (lengths != null) {
+                    code = CodeCache.shared().get(lengths);
+                }
+                block = BlockDecompressor.decodeBlock(code, payload, symbolCount);
+            }
+            blocks++;
+            position = 0;
+        }
+        return true;
+    }
+}
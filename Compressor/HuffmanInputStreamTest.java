@@ -0,0 +1,191 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class HuffmanInputStreamTest {
+
+    /**
+     * Writes the given bytes through a HuffmanOutputStream with the given
+     * block size, in pieces of random sizes with some single bytes and
+     * flushes in between
+     * @return the container
+     */
+    private static byte[] write(byte[] bytes, int blockSize) throws IOException {
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        HuffmanOutputStream output = new HuffmanOutputStream(container, blockSize);
+        Random random = new Random(bytes.length);
+        int i = 0;
+        while (i < bytes.length) {
+            if (random.nextInt(4) == 0) {
+                output.write(bytes[i++]);
+            } else {
+                int piece = Math.min(bytes.length - i, random.nextInt(2 * blockSize));
+                output.write(bytes, i, piece);
+                i += piece;
+            }
+            if (random.nextInt(8) == 0) {
+                output.flush();
+            }
+        }
+        output.close();
+        return container.toByteArray();
+    }
+
+    /**
+     * Reads everything from a HuffmanInputStream, one byte at a time
+     */
+    private static byte[] readBytes(byte[] container) throws IOException {
+        InputStream input = new HuffmanInputStream(new ByteArrayInputStream(container));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int b = input.read();
+        while (b != -1) {
+            output.write(b);
+            b = input.read();
+        }
+        input.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * Checks the bytes read back both whole and one at a time, and by the
+     * block decompressor
+     */
+    private static void assertRoundTrip(byte[] bytes, int blockSize) throws IOException {
+        byte[] container = write(bytes, blockSize);
+        InputStream input = new HuffmanInputStream(new ByteArrayInputStream(container));
+        Assert.assertArrayEquals(bytes, input.readAllBytes());
+        Assert.assertEquals(-1, input.read());
+        Assert.assertArrayEquals(bytes, readBytes(container));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HuffmanStreams.decompress(new ByteArrayInputStream(container), output);
+        Assert.assertArrayEquals(bytes, output.toByteArray());
+    }
+
+    /**
+     * Walks a streamed container front to back
+     * @return the tag and symbol count of every block, in order
+     */
+    private static List<int[]> blocks(byte[] container) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(container));
+        BlockCompressor.readHeader(data);
+        List<int[]> blocks = new ArrayList<>();
+        int tag;
+        while ((tag = data.readUnsignedByte()) != BlockCompressor.END) {
+            int symbolCount = data.readInt();
+            int payloadLength = data.readInt();
+            data.readInt(); //checksum
+            int tableSize = tag == BlockCompressor.BLOCK ? HuffmanCode.ALPHABET_SIZE : 0;
+            data.skipBytes(tableSize + payloadLength);
+            blocks.add(new int[] {tag, symbolCount});
+        }
+        Assert.assertEquals(BlockCompressor.NO_INDEX, data.readInt());
+        return blocks;
+    }
+
+    /**
+     * A stream closed without any bytes is a container with no blocks and
+     * no index, and reads back as empty
+     */
+    @Test
+    public void testEmpty() throws IOException {
+        byte[] container = write(new byte[0], 64);
+        Assert.assertEquals(0, blocks(container).size());
+        assertRoundTrip(new byte[0], 64);
+    }
+
+    /**
+     * A block whose bytes the previous code still suits reuses it without
+     * a table; when the mix changes, or the previous code lacks a byte, a
+     * fresh table is written, and switching back writes another
+     */
+    @Test
+    public void testTableSwitching() throws IOException {
+        int blockSize = 4096;
+        byte[] letters = new byte[blockSize];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (byte) ("abcd".charAt(i * 7 % 4));
+        }
+        byte[] noise = new byte[blockSize];
+        new Random(9).nextBytes(noise);
+        byte[] moreNoise = new byte[blockSize];
+        new Random(10).nextBytes(moreNoise);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] block : new byte[][] {letters, letters, noise, moreNoise, letters}) {
+            bytes.write(block);
+        }
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        try (HuffmanOutputStream output = new HuffmanOutputStream(container, blockSize)) {
+            output.write(bytes.toByteArray());
+        }
+        List<int[]> blocks = blocks(container.toByteArray());
+        int[] tags = new int[blocks.size()];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = blocks.get(i)[0];
+            Assert.assertEquals(blockSize, blocks.get(i)[1]);
+        }
+        Assert.assertArrayEquals(new int[] {BlockCompressor.BLOCK, BlockCompressor.BLOCK_REUSE,
+                BlockCompressor.BLOCK, BlockCompressor.BLOCK_REUSE, BlockCompressor.BLOCK}, tags);
+
+        Assert.assertArrayEquals(bytes.toByteArray(), readBytes(container.toByteArray()));
+    }
+
+    /**
+     * flush() in the middle of a block writes the bytes so far as a short
+     * block at once, so a reader can decode them before the stream goes
+     * on; the next block starts afresh
+     */
+    @Test
+    public void testFlushMidBlock() throws IOException {
+        byte[] bytes = BlockCompressorTest.randomBytes(1000, 12);
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        HuffmanOutputStream output = new HuffmanOutputStream(container, 512);
+        output.write(bytes, 0, 100);
+        Assert.assertEquals(0, container.size());
+        output.flush();
+
+        InputStream early = new HuffmanInputStream(
+                new ByteArrayInputStream(container.toByteArray()));
+        Assert.assertArrayEquals(Arrays.copyOf(bytes, 100), early.readNBytes(100));
+
+        output.write(bytes, 100, 900);
+        output.close();
+        List<int[]> blocks = blocks(container.toByteArray());
+        Assert.assertEquals(3, blocks.size());
+        Assert.assertEquals(100, blocks.get(0)[1]);
+        Assert.assertEquals(512, blocks.get(1)[1]);
+        Assert.assertEquals(388, blocks.get(2)[1]);
+        Assert.assertArrayEquals(bytes, readBytes(container.toByteArray()));
+    }
+
+    /**
+     * Any mix of single bytes, pieces longer than a block and flushes
+     * reads back the same, whole and a byte at a time; writing after
+     * close is refused
+     */
+    @Test
+    public void testWritePiecesAndFlushes() throws IOException {
+        byte[] bytes = BlockCompressorTest.randomBytes(20000, 8);
+        assertRoundTrip(bytes, 64);
+        assertRoundTrip(bytes, 3000);
+
+        HuffmanOutputStream output = new HuffmanOutputStream(new ByteArrayOutputStream(), 64);
+        output.close();
+        try {
+            output.write(1);
+            Assert.fail("wrote to a closed stream");
+        } catch (IOException expected) {
+            //the stream is closed
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.*;
+
+/**
+ * Compresses bytes as they are written, for inputs that never end or can't
+ * be read twice. Bytes are collected into blocks of at most blockSize; each
+ * block is encoded as soon as it fills or flush() is called, so memory stays
+ * bounded and nothing waits longer than one block.
+ *
+ * The code is re-derived from every block's own frequencies. When the code
+ * of the previous block would cost no more than the new one plus its
+ * header, the block is written with a BLOCK_REUSE tag and no table;
+ * otherwise a new table is written, switching codes.
+ *
+ * The output is a BlockCompressor container without a block index, readable
+ * front to back by HuffmanInputStream or BlockDecompressor.
+ */
+public class HuffmanOutputStream extends OutputStream {
+
+    //default number of bytes collected per block
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    private final DataOutputStream output;
+    private final byte[] buffer;
+    private int count;                 //bytes waiting in buffer
+    private long position;             //bytes written to output so far
+    private HuffmanCode previous;      //code of the last block written
+    private boolean closed;
+
+    /**
+     * New stream compressing into output with DEFAULT_BLOCK_SIZE blocks
+     */
+    public HuffmanOutputStream(OutputStream output) {
+        this(output, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * New stream compressing into output
+     * Pre: blockSize > 0
+     *
+     * @param output    where the compressed blocks are written
+     * @param blockSize most bytes held before a block is encoded
+     */
+    public HuffmanOutputStream(OutputStream output, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.output = new DataOutputStream(output);
+        this.buffer = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[count++] = (byte) b;
+        if (count == buffer.length) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            int piece = Math.min(length, buffer.length - count);
+            System.arraycopy(bytes, offset, buffer, count, piece);
+            count += piece;
+            offset += piece;
+            length -= piece;
+            if (count == buffer.length) {
+                writeBlock();
+            }
+        }
+    }
+
+    /**
+     * Encodes the bytes written so far as a block, even if it isn't full, and
+     * flushes the underlying stream
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeBlock();
+        output.flush();
+    }
+
+    /**
+     * Encodes any remaining bytes, ends the container and closes the
+     * underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        writeBlock();
+        start();
+        BlockCompressor.writeEnd(output, null, position);
+        closed = true;
+        output.close();
+    }
+
+    //post: the buffered bytes, if any, are written out as a block
+    private void writeBlock() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        start();
+        FrequencyCounter counter = new FrequencyCounter();
+        counter.update(buffer, 0, count);
+        long[] counts = counter.getCounts();
+        HuffmanCode fresh = new HuffmanCode(counts);
+
+        //switch tables only when the new one pays for its header
+        boolean reuse = previous != null
+                && cost(previous, counts) <= cost(fresh, counts) + 8L * HuffmanCode.ALPHABET_SIZE;
+        HuffmanCode code = reuse ? previous : fresh;
+        BlockCompressor.EncodedBlock block =
+                BlockCompressor.encode(buffer, 0, count, code, reuse);
+        position += block.writeTo(output);
+        previous = code;
+        count = 0;
+    }
+
+    //post: the container header is written, if it wasn't already
+    private void start() throws IOException {
+        if (position == 0) {
+            BlockCompressor.writeHeader(output);
+            position = BlockCompressor.HEADER_SIZE;
+        }
+    }
+
+    //returns the bits needed to encode the counted bytes with the given code,
+    //or Long.MAX_VALUE if some byte has no code
+    private static long cost(HuffmanCode code, long[] counts) {
+        byte[] lengths = code.getCodeLengths();
+        long bits = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                if (lengths[i] == 0) {
+                    return Long.MAX_VALUE;
+                }
+                bits += counts[i] * lengths[i];
+            }
+        }
+        return bits;
+    }
+
+    //post: throws IOException if the stream is closed
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
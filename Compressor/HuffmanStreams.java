@@ -0,0 +1,100 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Library entry points for compressing arbitrary bytes, with no file name
+ * conventions and no console output. Any of the 256 byte values may appear.
+ * Input is read once, a block at a time, so it may come from a pipe or socket;
+ * the output is a BlockCompressor container.
+ */
+public class HuffmanStreams {
+
+    private HuffmanStreams() {
+    }
+
+    /**
+     * Compresses everything left in input
+     * Pre: none
+     * Post: output holds the compressed bytes and is flushed but not closed
+     *
+     * @param input  the bytes to compress
+     * @param output where the compressed bytes are written
+     * @throws IOException if reading or writing fails
+     */
+    public static void compress(InputStream input, OutputStream output) throws IOException {
+        new BlockCompressor().compress(input, output);
+    }
+
+    /**
+     * Compresses everything left in input, coding each byte with one code
+     * per block (order-0) or with a code chosen by the byte before it
+     * (order-1), which is slower but smaller on text and other data whose
+     * bytes depend on their neighbours. decompress and verify read either.
+     * Post: output holds the compressed bytes and is flushed but not closed
+     *
+     * @param input  the bytes to compress
+     * @param output where the compressed bytes are written
+     * @param order1 true for order-1 coding
+     * @throws IOException if reading or writing fails
+     */
+    public static void compress(InputStream input, OutputStream output, boolean order1)
+            throws IOException {
+        new BlockCompressor(BlockCompressor.DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool(),
+                order1).compress(input, output);
+    }
+
+    /**
+     * Decompresses bytes written by compress
+     * Pre: input is positioned at the start of compressed bytes
+     * Post: output holds the original bytes and is flushed but not closed
+     *
+     * @param input  the compressed bytes
+     * @param output where the original bytes are written
+     * @throws IOException if reading or writing fails or the input is
+     *                     malformed
+     */
+    public static void decompress(InputStream input, OutputStream output) throws IOException {
+        new BlockDecompressor().decompress(input, output);
+    }
+
+    /**
+     * Checks bytes written by compress for damage without decompressing them
+     * Pre: input is positioned at the start of compressed bytes
+     * Post: input has been read at least to the end of them
+     *
+     * @param input the compressed bytes
+     * @return the number of original bytes they hold
+     * @throws IOException if reading fails or the input is damaged
+     */
+    public static long verify(InputStream input) throws IOException {
+        return new BlockDecompressor().verify(input);
+    }
+
+    /**
+     * Compresses everything left in the input channel
+     * Post: neither channel is closed
+     *
+     * @throws IOException if reading or writing fails
+     */
+    public static void compress(ReadableByteChannel input, WritableByteChannel output)
+            throws IOException {
+        compress(Channels.newInputStream(input),
+                Channels.newOutputStream(output));
+    }
+
+    /**
+     * Decompresses bytes written by compress from the input channel
+     * Post: neither channel is closed
+     *
+     * @throws IOException if reading or writing fails or the input is
+     *                     malformed
+     */
+    public static void decompress(ReadableByteChannel input, WritableByteChannel output)
+            throws IOException {
+        decompress(Channels.newInputStream(input),
+                Channels.newOutputStream(output));
+    }
+}
@@ -0,0 +1,188 @@
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class HuffmanStreamsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns text-like bytes whose next byte depends strongly on the one
+     * before it, where order-1 coding pays off
+     */
+    private static byte[] pairedText(int count, long seed) {
+        String[] words = {"the ", "then ", "there ", "quick ", "quiet ", "queue ", "zebra "};
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < count) {
+            text.append(words[random.nextInt(words.length)]);
+        }
+        return text.substring(0, count).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Compresses the bytes into order-1 blocks of the given size
+     * @return the container
+     */
+    private static byte[] compressOrder1(byte[] bytes, int blockSize) throws IOException {
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        new BlockCompressor(blockSize, ForkJoinPool.commonPool(), true)
+                .compress(new ByteArrayInputStream(bytes), container);
+        return container.toByteArray();
+    }
+
+    /**
+     * Order-1 containers are tagged as such, come out smaller than order-0
+     * on data whose bytes follow from the byte before, and round-trip
+     * through every reader: streamed, parallel, by range and verify
+     */
+    @Test
+    public void testOrder1RoundTrip() throws IOException {
+        byte[] bytes = pairedText(200000, 50);
+        ByteArrayOutputStream order0 = new ByteArrayOutputStream();
+        HuffmanStreams.compress(new ByteArrayInputStream(bytes), order0, false);
+        ByteArrayOutputStream order1 = new ByteArrayOutputStream();
+        HuffmanStreams.compress(new ByteArrayInputStream(bytes), order1, true);
+        Assert.assertEquals(BlockCompressor.BLOCK,
+                order0.toByteArray()[BlockCompressor.HEADER_SIZE]);
+        Assert.assertEquals(BlockCompressor.BLOCK_ORDER1,
+                order1.toByteArray()[BlockCompressor.HEADER_SIZE]);
+        Assert.assertTrue(order1.size() < order0.size());
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        HuffmanStreams.decompress(new ByteArrayInputStream(order1.toByteArray()), decoded);
+        Assert.assertArrayEquals(bytes, decoded.toByteArray());
+        Assert.assertEquals(bytes.length,
+                HuffmanStreams.verify(new ByteArrayInputStream(order1.toByteArray())));
+
+        //several blocks, so the parallel and ranged readers go through the index
+        Path container = folder.newFile().toPath();
+        Files.write(container, compressOrder1(bytes, 30000));
+        Path output = folder.newFile().toPath();
+        new BlockDecompressor().decompress(container, output);
+        Assert.assertArrayEquals(bytes, Files.readAllBytes(output));
+        Assert.assertEquals(bytes.length, new BlockDecompressor().verify(container));
+        ByteArrayOutputStream range = new ByteArrayOutputStream();
+        new BlockDecompressor().decompressRange(container, 29990, 60010, range);
+        Assert.assertArrayEquals(Arrays.copyOfRange(bytes, 29990, 60010), range.toByteArray());
+    }
+
+    /**
+     * One order-1 block among order-0 blocks written by hand reads back,
+     * so readers pick the coding per block by its tag
+     */
+    @Test
+    public void testMixedBlocks() throws IOException {
+        byte[] first = pairedText(5000, 51);
+        byte[] second = BlockCompressorTest.randomBytes(5000, 52);
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(container);
+        BlockCompressor.writeHeader(data);
+        BlockCompressor.encodeOrder1(first, 0, first.length).writeTo(data);
+        BlockCompressor.encode(second, 0, second.length).writeTo(data);
+        BlockCompressor.writeEnd(data, null, container.size());
+        data.flush();
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        HuffmanStreams.decompress(new ByteArrayInputStream(container.toByteArray()), decoded);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        Assert.assertArrayEquals(expected.toByteArray(), decoded.toByteArray());
+    }
+
+    /**
+     * A flipped byte inside an order-1 payload is caught by verify and by
+     * decompressing
+     */
+    @Test
+    public void testOrder1Damage() throws IOException {
+        byte[] container = compressOrder1(pairedText(20000, 53), 1 << 20);
+        container[BlockCompressor.HEADER_SIZE + BlockCompressor.BLOCK_HEADER_SIZE + 600] ^= 0x08;
+        try {
+            HuffmanStreams.verify(new ByteArrayInputStream(container));
+            Assert.fail("verify accepted a damaged order-1 block");
+        } catch (IOException expected) {
+            //the block checksum doesn't match
+        }
+        try {
+            HuffmanStreams.decompress(new ByteArrayInputStream(container),
+                    new ByteArrayOutputStream());
+            Assert.fail("decompress accepted a damaged order-1 block");
+        } catch (IOException expected) {
+            //the block checksum doesn't match
+        }
+    }
+
+    /**
+     * Returns bytes of every value, with the ones text handling would
+     * change (NUL, CR, LF, ^Z and 255) common
+     */
+    private static byte[] binary(int count, long seed) {
+        byte[] awkward = {0, '\r', '\n', 0x1a, (byte) 255};
+        Random random = new Random(seed);
+        byte[] bytes = new byte[count];
+        for (int i = 0; i < count; i++) {
+            bytes[i] = random.nextBoolean()
+                    ? awkward[random.nextInt(awkward.length)] : (byte) random.nextInt(256);
+        }
+        return bytes;
+    }
+
+    /**
+     * Binary bytes compressed from a pipe, read once as they arrive, and
+     * decompressed through channels come back exactly, and neither side's
+     * channels are closed
+     */
+    @Test
+    public void testBinaryThroughChannels() throws Exception {
+        byte[] bytes = binary(300000, 54);
+        Pipe pipe = Pipe.open();
+        Thread writer = new Thread(() -> {
+            try (WritableByteChannel sink = pipe.sink()) {
+                ByteBuffer source = ByteBuffer.wrap(bytes);
+                while (source.hasRemaining()) {
+                    sink.write(source);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.start();
+        ByteArrayOutputStream container = new ByteArrayOutputStream();
+        WritableByteChannel compressed = Channels.newChannel(container);
+        HuffmanStreams.compress(pipe.source(), compressed);
+        writer.join();
+        Assert.assertTrue(pipe.source().isOpen());
+        Assert.assertTrue(compressed.isOpen());
+        pipe.source().close();
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        ReadableByteChannel input = Channels.newChannel(
+                new ByteArrayInputStream(container.toByteArray()));
+        WritableByteChannel output = Channels.newChannel(decoded);
+        HuffmanStreams.decompress(input, output);
+        Assert.assertTrue(input.isOpen());
+        Assert.assertTrue(output.isOpen());
+        Assert.assertArrayEquals(bytes, decoded.toByteArray());
+    }
+}
@@ -0,0 +1,291 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/**
+ * Order-1 Huffman coding: the code used for each byte is chosen by the byte
+ * before it. Rather than one table for each of the 256 previous bytes, the
+ * contexts are grouped into at most MAX_TABLES clusters of similar
+ * statistics, each with its own canonical code, which keeps the header small
+ * and the decode tables few enough to stay in cache.
+ *
+ * Encoded layout: symbol count (int), table count (byte), the table of each
+ * of the 256 contexts (256 bytes), ALPHABET_SIZE code lengths per table, then
+ * the bits as a BitOutputStream stream. The first byte is coded in context 0.
+ * BlockCompressor writes such encodings as BLOCK_ORDER1 blocks when made for
+ * order-1 coding, as HuffmanStreams.compress(input, output, true) does.
+ */
+public class Order1Compressor {
+
+    //most code tables kept for the 256 contexts
+    public static final int MAX_TABLES = 8;
+
+    //rounds of assigning contexts to tables and rebuilding the tables
+    private static final int ROUNDS = 4;
+
+    private static final int ALPHABET_SIZE = HuffmanCode.ALPHABET_SIZE;
+
+    /**
+     * Compresses count bytes of the given array
+     * Pre: 0 <= offset, offset + count <= bytes.length
+     * Post: bytes is unchanged
+     *
+     * @return the encoded bytes
+     */
+    public static byte[] encode(byte[] bytes, int offset, int count) {
+        //count each byte by the byte before it
+        long[][] counts = new long[ALPHABET_SIZE][ALPHABET_SIZE];
+        int previous = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int n = bytes[i] & 0xff;
+            counts[previous][n]++;
+            previous = n;
+        }
+        byte[] contextTable = new byte[ALPHABET_SIZE];
+        HuffmanCode[] codes = cluster(counts, contextTable);
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(4096);
+        DataOutputStream header = new DataOutputStream(encoded);
+        try {
+            header.writeInt(count);
+            header.writeByte(codes.length);
+            header.write(contextTable);
+            for (HuffmanCode code : codes) {
+                code.writeHeader(header);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long[][] words = new long[codes.length][];
+        byte[][] lengths = new byte[codes.length][];
+        for (int t = 0; t < codes.length; t++) {
+            words[t] = codes[t].getCodeWords();
+            lengths[t] = codes[t].getCodeLengths();
+        }
+
+        //size the result from the code lengths and pack straight into it:
+        //the padding count, then the bits as BitOutputStream would write them
+        long bitCount = 0;
+        previous = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int n = bytes[i] & 0xff;
+            bitCount += lengths[contextTable[previous]][n];
+            previous = n;
+        }
+        long size = encoded.size() + 1 + (bitCount + 7) / 8;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many bytes for one encoding: " + count);
+        }
+        byte[] result = Arrays.copyOf(encoded.toByteArray(), (int) size);
+        int out = encoded.size();
+        result[out++] = (byte) ((8 - bitCount % 8) % 8);
+        long bits = 0;      //bits not yet stored, lowest first
+        int numBits = 0;
+        previous = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int n = bytes[i] & 0xff;
+            int t = contextTable[previous];
+            bits |= words[t][n] << numBits;
+            numBits += lengths[t][n];
+            while (numBits >= 8) {
+                result[out++] = (byte) bits;
+                bits >>>= 8;
+                numBits -= 8;
+            }
+            previous = n;
+        }
+        if (numBits > 0) {
+            result[out] = (byte) bits;
+        }
+        return result;
+    }
+
+    /**
+     * Decompresses bytes produced by encode
+     * Pre: encoded was produced by encode
+     *
+     * @return the original bytes
+     * @throws IOException if encoded is malformed
+     */
+    public static byte[] decode(byte[] encoded) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(encoded));
+        int count = input.readInt();
+        int tableCount = input.readUnsignedByte();
+        if (count < 0 || tableCount < 1 || tableCount > MAX_TABLES) {
+            throw new IOException("Malformed order-1 header");
+        }
+        byte[] contextTable = new byte[ALPHABET_SIZE];
+        input.readFully(contextTable);
+        HuffmanCode[] codes = new HuffmanCode[tableCount];
+        for (int t = 0; t < tableCount; t++) {
+            codes[t] = HuffmanCode.readHeader(input);
+        }
+        //look codes up by context directly in the decode loop
+        HuffmanCode[] byContext = new HuffmanCode[ALPHABET_SIZE];
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            int t = contextTable[c];
+            if (t < 0 || t >= tableCount) {
+                throw new IOException("Context refers to missing table " + t);
+            }
+            byContext[c] = codes[t];
+        }
+
+        BitInputStream bits = new BitInputStream(input);
+        byte[] result = new byte[count];
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int n = byContext[previous].nextSymbol(bits);
+            if (n == -1) {
+                throw new IOException("Input ended after " + i + " of " + count + " bytes");
+            }
+            result[i] = (byte) n;
+            previous = n;
+        }
+        return result;
+    }
+
+    //pre : counts[context][symbol] are the order-1 counts
+    //post: contextTable maps each context to its table; returns the tables
+    private static HuffmanCode[] cluster(long[][] counts, byte[] contextTable) {
+        long[] totals = new long[ALPHABET_SIZE];
+        int used = 0;
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            for (long n : counts[c]) {
+                totals[c] += n;
+            }
+            if (totals[c] > 0) {
+                used++;
+            }
+        }
+        int tableCount = Math.max(1, Math.min(MAX_TABLES, used));
+
+        //seed the tables with the busiest contexts, the rest sharing the last
+        boolean[] seed = new boolean[ALPHABET_SIZE];
+        for (int t = 0; t < tableCount - 1; t++) {
+            int best = -1;
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                if (!seed[c] && totals[c] > 0 && (best == -1 || totals[c] > totals[best])) {
+                    best = c;
+                }
+            }
+            seed[best] = true;
+            contextTable[best] = (byte) t;
+        }
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            if (!seed[c]) {
+                contextTable[c] = (byte) (tableCount - 1);
+            }
+        }
+
+        HuffmanCode[] codes = buildTables(counts, contextTable, tableCount);
+        for (int round = 0; round < ROUNDS; round++) {
+            //move each context to the table that codes it most cheaply
+            boolean changed = false;
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                if (totals[c] == 0) {
+                    continue;
+                }
+                int best = contextTable[c];
+                long bestCost = cost(codes[best], counts[c]);
+                for (int t = 0; t < tableCount; t++) {
+                    long cost = cost(codes[t], counts[c]);
+                    if (cost < bestCost) {
+                        best = t;
+                        bestCost = cost;
+                    }
+                }
+                if (best != contextTable[c]) {
+                    contextTable[c] = (byte) best;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+            codes = buildTables(counts, contextTable, tableCount);
+        }
+        return codes;
+    }
+
+    //returns a code for each table built from the counts of its contexts
+    private static HuffmanCode[] buildTables(long[][] counts, byte[] contextTable,
+                                             int tableCount) {
+        long[][] merged = new long[tableCount][ALPHABET_SIZE];
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            long[] into = merged[contextTable[c]];
+            for (int n = 0; n < ALPHABET_SIZE; n++) {
+                into[n] += counts[c][n];
+            }
+        }
+        HuffmanCode[] codes = new HuffmanCode[tableCount];
+        for (int t = 0; t < tableCount; t++) {
+            codes[t] = new HuffmanCode(merged[t]);
+        }
+        return codes;
+    }
+
+    //returns the bits needed to code the given counts, charging symbols
+    //without a code one bit more than the longest code
+    private static long cost(HuffmanCode code, long[] counts) {
+        byte[] lengths = code.getCodeLengths();
+        long bits = 0;
+        for (int n = 0; n < ALPHABET_SIZE; n++) {
+            int length = lengths[n] == 0 ? HuffmanCode.MAX_CODE_LENGTH + 1 : lengths[n];
+            bits += counts[n] * length;
+        }
+        return bits;
+    }
+
+    /**
+     * Compares order-1 with order-0 coding on the given file, printing the
+     * size ratio and encode/decode throughput of each
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("usage: java Order1Compressor <file>");
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(Paths.get(args[0]));
+        double megabytes = bytes.length / 1e6;
+        final int runs = 5;
+
+        //order-0: one table for the whole file, as HuffmanCompressor uses
+        long encodeTime = 0;
+        long decodeTime = 0;
+        long size0 = 0;
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            BlockCompressor.EncodedBlock block = BlockCompressor.encode(bytes, 0, bytes.length);
+            long middle = System.nanoTime();
+            BlockDecompressor.decodeBlock(new HuffmanCode(block.lengths), block.payload,
+                    block.symbolCount);
+            long end = System.nanoTime();
+            encodeTime = middle - start;
+            decodeTime = end - middle;
+            size0 = block.lengths.length + block.payload.length;
+        }
+        report("order-0", bytes.length, size0, megabytes, encodeTime, decodeTime);
+
+        long size1 = 0;
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            byte[] encoded = encode(bytes, 0, bytes.length);
+            long middle = System.nanoTime();
+            decode(encoded);
+            long end = System.nanoTime();
+            encodeTime = middle - start;
+            decodeTime = end - middle;
+            size1 = encoded.length;
+        }
+        report("order-1", bytes.length, size1, megabytes, encodeTime, decodeTime);
+    }
+
+    //prints one line of the comparison, the times being of the last run
+    private static void report(String name, long original, long size, double megabytes,
+                               long encodeTime, long decodeTime) {
+        System.out.printf("%s: %d -> %d bytes (ratio %.3f), encode %.1f MB/s, decode %.1f MB/s%n",
+                name, original, size, original == 0 ? 0.0 : (double) size / original,
+                megabytes / (encodeTime / 1e9), megabytes / (decodeTime / 1e9));
+    }
+}
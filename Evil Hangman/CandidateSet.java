@@ -0,0 +1,103 @@
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * The words still possible in a game, kept as a sorted array of word IDs
+ * into a shared pool of words rather than as a tree of strings. The pool is
+ * sorted and holds each word once, so the IDs and the words they stand for
+ * are in the same order. A new set stands for the whole pool without an
+ * array, so it is created in constant time; the first narrowing allocates
+ * an array just big enough for the words kept, and later ones compact it
+ * in place, so a guess allocates nothing per word.
+ *
+ * This set is a read-only view: it can't be changed through the Set
+ * methods, and it reflects the candidates as they are narrowed.
+ */
+public class CandidateSet extends AbstractSet<String> {
+
+    private final String[] pool;
+    private int[] ids;      //null while every word of the pool is a candidate
+    private int size;
+
+    //Creates a set holding every word of the pool, which is shared
+    //pre : pool is sorted and holds no word twice
+    public CandidateSet(String[] pool) {
+        this.pool = pool;
+        this.size = pool.length;
+    }
+
+    //Returns the number of words still in the set
+    @Override
+    public int size() {
+        return size;
+    }
+
+    //Returns the ID of the candidate at the given index, in word order
+    public int idAt(int index) {
+        return ids == null ? index : ids[index];
+    }
+
+    //Returns the word with the given ID
+    public String word(int id) {
+        return pool[id];
+    }
+
+    //Keeps only the words whose IDs pass the test, in the same order,
+    //moving them to the front of the array
+    //pre : exactly count of the words pass the test
+    public void retainIf(IntPredicate keep, int count) {
+        if (ids == null) {
+            ids = new int[count];
+            int kept = 0;
+            for (int id = 0; id < size && kept < count; id++) {
+                if (keep.test(id)) {
+                    ids[kept++] = id;
+                }
+            }
+            size = kept;
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep.test(ids[i])) {
+                ids[kept++] = ids[i];
+            }
+        }
+        size = kept;
+    }
+
+    //Returns true if the word is still in the set; the word is found in the
+    //pool and its ID in the candidates, both by binary search
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        int id = Arrays.binarySearch(pool, (String) o);
+        if (id < 0) {
+            return false;
+        }
+        return ids == null || Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    //Returns the words still in the set, in order
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public String next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return pool[idAt(next++)];
+            }
+        };
+    }
+}
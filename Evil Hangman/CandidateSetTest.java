@@ -0,0 +1,92 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class CandidateSetTest {
+
+    private static final String[] POOL = {"ache", "bake", "cake", "dame", "fame", "lake"};
+
+    /**
+     * A new set holds the whole pool, in order, with each word's ID its
+     * index in the pool
+     */
+    @Test
+    public void testWholePool() {
+        CandidateSet set = new CandidateSet(POOL);
+        Assert.assertEquals(POOL.length, set.size());
+        Assert.assertEquals(Arrays.asList(POOL), new ArrayList<>(set));
+        for (int i = 0; i < POOL.length; i++) {
+            Assert.assertEquals(i, set.idAt(i));
+            Assert.assertEquals(POOL[i], set.word(i));
+            Assert.assertTrue(set.contains(POOL[i]));
+        }
+        Assert.assertFalse(set.contains("game"));
+        Assert.assertFalse(set.contains(42));
+        Assert.assertTrue(new CandidateSet(new String[0]).isEmpty());
+    }
+
+    /**
+     * Narrowing keeps the words that pass, in order; a second narrowing
+     * works on what the first kept, and words dropped are no longer
+     * contained though they are still in the pool
+     */
+    @Test
+    public void testRetainIf() {
+        CandidateSet set = new CandidateSet(POOL);
+        set.retainIf(id -> POOL[id].endsWith("ke"), 3);
+        Assert.assertEquals(Arrays.asList("bake", "cake", "lake"), new ArrayList<>(set));
+        Assert.assertEquals(1, set.idAt(0));
+        Assert.assertEquals(5, set.idAt(2));
+
+        set.retainIf(id -> id != 2, 2);
+        Assert.assertEquals(Arrays.asList("bake", "lake"), new ArrayList<>(set));
+        Assert.assertTrue(set.contains("lake"));
+        Assert.assertFalse(set.contains("cake"));
+        Assert.assertFalse(set.contains("ache"));
+        Assert.assertEquals("cake", set.word(2));
+
+        set.retainIf(id -> false, 0);
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertFalse(set.contains("bake"));
+    }
+
+    /**
+     * The set is a read-only view: changing it fails, its iterator ends
+     * where the set does, and a game's words follow its guesses
+     */
+    @Test
+    public void testReadOnlyView() {
+        CandidateSet set = new CandidateSet(POOL);
+        try {
+            set.add("make");
+            Assert.fail("added to a candidate set");
+        } catch (UnsupportedOperationException expected) {
+            //candidates only narrow
+        }
+        Iterator<String> words = set.iterator();
+        words.next();
+        try {
+            words.remove();
+            Assert.fail("removed through the iterator");
+        } catch (UnsupportedOperationException expected) {
+            //candidates only narrow
+        }
+        set.retainIf(id -> id == 4, 1);
+        words = set.iterator();
+        Assert.assertEquals("fame", words.next());
+        Assert.assertFalse(words.hasNext());
+        try {
+            words.next();
+            Assert.fail("iterated past the end");
+        } catch (NoSuchElementException expected) {
+            //no words are left
+        }
+
+        HangmanManager manager = new HangmanManager(Arrays.asList(POOL), 4, 5);
+        Set<String> view = manager.words();
+        manager.record('k');
+        Assert.assertSame(view, manager.words());
+        Assert.assertEquals(Arrays.asList("ache", "dame", "fame"), new ArrayList<>(view));
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Counts how many words fall into each pattern family during one guess.
+ * A family is keyed by a bitmask of the positions where the guessed letter
+ * appears (bit i set if letter i is the guess), so every word maps to a
+ * primitive long and no pattern strings or boxed keys are created per word.
+ * The keys live in an open-addressing table that doubles as it fills.
+ */
+public class FamilyCounter {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];   //0 marks a free slot
+    private int size;
+
+    //Adds one word to the family with the given mask
+    public void add(long mask) {
+        add(mask, 1);
+    }
+
+    //Adds count words to the family with the given mask
+    public void add(long mask, int count) {
+        int slot = find(mask);
+        if (counts[slot] == 0) {
+            keys[slot] = mask;
+            size++;
+        }
+        counts[slot] += count;
+        if (2 * size > keys.length) {
+            grow();
+        }
+    }
+
+    //Adds the counts of another counter into this one
+    public void addAll(FamilyCounter other) {
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            if (other.counts[slot] != 0) {
+                add(other.keys[slot], other.counts[slot]);
+            }
+        }
+    }
+
+    //Returns how many words have the given mask
+    public int count(long mask) {
+        return counts[find(mask)];
+    }
+
+    //Returns the number of families
+    public int size() {
+        return size;
+    }
+
+    //Returns the number of slots; families are found by checking
+    //countAt(slot) for every slot below it
+    public int capacity() {
+        return keys.length;
+    }
+
+    //Returns the mask of the family in the given slot
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    //Returns the size of the family in the given slot, 0 if it is free
+    public int countAt(int slot) {
+        return counts[slot];
+    }
+
+    //returns the slot holding the mask, or the free slot where it belongs
+    private int find(long mask) {
+        int last = keys.length - 1;
+        int slot = hash(mask) & last;
+        while (counts[slot] != 0 && keys[slot] != mask) {
+            slot = (slot + 1) & last;
+        }
+        return slot;
+    }
+
+    //spreads the bits of the mask over the table index
+    private static int hash(long mask) {
+        long h = mask * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    //doubles the table and places every family again
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[2 * oldKeys.length];
+        counts = new int[2 * oldKeys.length];
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldCounts[slot] != 0) {
+                int to = find(oldKeys[slot]);
+                keys[to] = oldKeys[slot];
+                counts[to] = oldCounts[slot];
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.*;
+
+/**
+ * A dictionary prepared once and shared, read-only, by any number of games
+ * at once. The words are split by length; each length keeps its words
+ * sorted and without repeats in a pool, where a word's index is its ID,
+ * along with the position index for those words: for ID id and letter c
+ * from a to z, positions[id * ALPHABET + c - 'a'] is the bitmask of the
+ * positions holding c. Games only read these arrays, so starting a game
+ * copies nothing.
+ */
+public class HangmanDictionary {
+
+    //letters with their own entry in the position index
+    public static final int ALPHABET = 26;
+
+    private static final String[] NO_WORDS = new String[0];
+    private static final long[] NO_POSITIONS = new long[0];
+
+    private final Map<Integer, String[]> pools = new HashMap<>();
+    private final Map<Integer, long[]> indexes = new HashMap<>();
+
+    //Prepares every word of the given collection
+    public HangmanDictionary(Collection<String> words) {
+        this(words, -1);
+    }
+
+    //prepares the words of the given length, or all words if length is -1
+    private HangmanDictionary(Collection<String> words, int length) {
+        Map<Integer, List<String>> byLength = new HashMap<>();
+        for (String word : words) {
+            if (length == -1 || word.length() == length) {
+                byLength.computeIfAbsent(word.length(), key -> new ArrayList<>()).add(word);
+            }
+        }
+        for (Map.Entry<Integer, List<String>> entry : byLength.entrySet()) {
+            String[] pool = sortedUnique(entry.getValue());
+            pools.put(entry.getKey(), pool);
+            //patterns keep one bit per letter in a long
+            if (entry.getKey() <= Long.SIZE) {
+                indexes.put(entry.getKey(), index(pool));
+            }
+        }
+    }
+
+    //Prepares only the words of the given length, for a single game
+    public static HangmanDictionary forLength(Collection<String> words, int length) {
+        return new HangmanDictionary(words, length);
+    }
+
+    //Returns the number of different words of the given length
+    public int size(int length) {
+        return pool(length).length;
+    }
+
+    //Returns the words of the given length, sorted, each once; the array
+    //is shared and must not be changed
+    String[] pool(int length) {
+        return pools.getOrDefault(length, NO_WORDS);
+    }
+
+    //Returns the position index of the words of the given length, or null
+    //if they are too long to index; the array is shared and must not be
+    //changed
+    long[] positions(int length) {
+        if (!pools.containsKey(length)) {
+            return NO_POSITIONS;
+        }
+        return indexes.get(length);
+    }
+
+    //returns the words sorted with repeats removed
+    private static String[] sortedUnique(List<String> words) {
+        Collections.sort(words);
+        int unique = 0;
+        for (String word : words) {
+            if (unique == 0 || !word.equals(words.get(unique - 1))) {
+                words.set(unique++, word);
+            }
+        }
+        return words.subList(0, unique).toArray(new String[0]);
+    }
+
+    //returns the position index of the words of the pool
+    private static long[] index(String[] pool) {
+        long[] positions = new long[pool.length * ALPHABET];
+        for (int id = 0; id < pool.length; id++) {
+            String word = pool[id];
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (c >= 'a' && c <= 'z') {
+                    positions[id * ALPHABET + c - 'a'] |= 1L << i;
+                }
+            }
+        }
+        return positions;
+    }
+}
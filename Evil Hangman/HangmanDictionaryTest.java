@@ -0,0 +1,186 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class HangmanDictionaryTest {
+
+    /**
+     * Returns the positions of the letter in the word with the given ID,
+     * read from the position index
+     */
+    private static long positions(HangmanDictionary dictionary, int length, int id, char c) {
+        return dictionary.positions(length)[id * HangmanDictionary.ALPHABET + c - 'a'];
+    }
+
+    /**
+     * Every word gets, for each letter a to z, a bitmask of the positions
+     * holding it, bit i for letter i, and 0 for letters it doesn't hold;
+     * upper case letters and other characters are left out of the index
+     */
+    @Test
+    public void testPositionIndex() {
+        HangmanDictionary dictionary = new HangmanDictionary(
+                Arrays.asList("banana", "abacus", "Zz'z-a"));
+        String[] pool = dictionary.pool(6);
+        Assert.assertArrayEquals(new String[] {"Zz'z-a", "abacus", "banana"}, pool);
+        Assert.assertEquals(3 * HangmanDictionary.ALPHABET, dictionary.positions(6).length);
+
+        Assert.assertEquals(0b101010, positions(dictionary, 6, 2, 'a'));
+        Assert.assertEquals(0b000001, positions(dictionary, 6, 2, 'b'));
+        Assert.assertEquals(0b010100, positions(dictionary, 6, 2, 'n'));
+        Assert.assertEquals(0, positions(dictionary, 6, 2, 'z'));
+        Assert.assertEquals(0b000101, positions(dictionary, 6, 1, 'a'));
+        Assert.assertEquals(0b100000, positions(dictionary, 6, 1, 's'));
+        Assert.assertEquals(0b100000, positions(dictionary, 6, 0, 'a'));
+        Assert.assertEquals(0b001010, positions(dictionary, 6, 0, 'z'));
+    }
+
+    /**
+     * Words of up to 64 letters are indexed, the last letter in the top
+     * bit of the mask; longer words have no index and can't be played
+     */
+    @Test
+    public void testLongestIndexedWord() {
+        String longest = String.join("", Collections.nCopies(63, "a")) + "b";
+        String tooLong = longest + "c";
+        HangmanDictionary dictionary = new HangmanDictionary(Arrays.asList(longest, tooLong));
+        Assert.assertEquals(Long.MIN_VALUE, positions(dictionary, 64, 0, 'b'));
+        Assert.assertEquals(Long.MAX_VALUE, positions(dictionary, 64, 0, 'a'));
+        Assert.assertNull(dictionary.positions(65));
+
+        HangmanManager manager = new HangmanManager(dictionary, 64, 3);
+        Assert.assertEquals(1, manager.record('b'));
+        Assert.assertTrue(manager.pattern().endsWith("- b"));
+        try {
+            new HangmanManager(dictionary, 65, 3);
+            Assert.fail("played a word of 65 letters");
+        } catch (IllegalArgumentException expected) {
+            //patterns keep one bit per letter in a long
+        }
+    }
+
+    /**
+     * Guesses outside a to z, which the index doesn't cover, are found by
+     * scanning the words, and a letter with no entry for a length gives no
+     * index at all
+     */
+    @Test
+    public void testGuessesOutsideIndex() {
+        List<String> words = Arrays.asList("it's", "its'", "Itsy", "itsy", "itss");
+        HangmanManager manager = new HangmanManager(words, 4, 5);
+        Assert.assertEquals(0, manager.record('\''));
+        Assert.assertEquals(Arrays.asList("Itsy", "itss", "itsy"),
+                new ArrayList<>(manager.words()));
+        Assert.assertEquals(4, manager.guessesLeft());
+        Assert.assertEquals(0, manager.record('I'));
+        Assert.assertEquals(Arrays.asList("itss", "itsy"), new ArrayList<>(manager.words()));
+        Assert.assertEquals(1, manager.record('t'));
+        Assert.assertEquals("- t - -", manager.pattern());
+
+        Assert.assertEquals(0, new HangmanDictionary(words).positions(7).length);
+    }
+
+    /**
+     * Words are split by length, sorted and without repeats; forLength
+     * keeps one length only; and the pool of a length is the same array
+     * every time, as games share it rather than copy it
+     */
+    @Test
+    public void testPartitionedByLength() {
+        List<String> words = Arrays.asList("pear", "fig", "plum", "pear", "kiwi", "date", "fig");
+        HangmanDictionary dictionary = new HangmanDictionary(words);
+        Assert.assertEquals(4, dictionary.size(4));
+        Assert.assertEquals(1, dictionary.size(3));
+        Assert.assertEquals(0, dictionary.size(5));
+        Assert.assertArrayEquals(new String[] {"date", "kiwi", "pear", "plum"},
+                dictionary.pool(4));
+        Assert.assertSame(dictionary.pool(4), dictionary.pool(4));
+        Assert.assertSame(dictionary.positions(4), dictionary.positions(4));
+
+        HangmanDictionary four = HangmanDictionary.forLength(words, 4);
+        Assert.assertArrayEquals(dictionary.pool(4), four.pool(4));
+        Assert.assertEquals(0, four.size(3));
+    }
+
+    /**
+     * Games on one dictionary don't see each other's guesses, and leave
+     * the dictionary as it was
+     */
+    @Test
+    public void testGamesDoNotShareState() {
+        List<String> words = Arrays.asList("date", "kiwi", "pear", "plum", "lime");
+        HangmanDictionary dictionary = new HangmanDictionary(words);
+        String[] pool = dictionary.pool(4).clone();
+        HangmanManager first = new HangmanManager(dictionary, 4, 5);
+        HangmanManager second = new HangmanManager(dictionary, 4, 5);
+        first.record('e');
+        first.record('i');
+        Assert.assertEquals(5, second.words().size());
+        Assert.assertEquals("- - - -", second.pattern());
+        Assert.assertTrue(second.guesses().isEmpty());
+        Assert.assertArrayEquals(pool, dictionary.pool(4));
+        Assert.assertEquals(first.pattern(),
+                replay(new HangmanManager(words, 4, 5), "ei"));
+    }
+
+    /**
+     * Plays the guesses in order while the game allows
+     * @return the pattern the game ends on
+     */
+    private static String replay(HangmanManager manager, String guesses) {
+        for (char guess : guesses.toCharArray()) {
+            if (manager.guessesLeft() > 0 && !manager.words().isEmpty()) {
+                manager.record(guess);
+            }
+        }
+        return manager.pattern();
+    }
+
+    /**
+     * Many games at once on one shared dictionary, some large enough to
+     * count in parallel, end as the same games do on dictionaries of
+     * their own
+     */
+    @Test
+    public void testConcurrentGames() throws Exception {
+        Random random = new Random(24);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 120000; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int j = 0; j < 3 + i % 4; j++) {
+                word.append((char) ('a' + random.nextInt(6)));
+            }
+            words.add(word.toString());
+        }
+        HangmanDictionary shared = new HangmanDictionary(words);
+        Assert.assertTrue(shared.size(6) > 1 << 14);
+        List<Callable<String[]>> games = new ArrayList<>();
+        for (int game = 0; game < 32; game++) {
+            int length = 3 + game % 4;
+            List<Character> letters = new ArrayList<>();
+            for (char c = 'a'; c <= 'f'; c++) {
+                letters.add(c);
+            }
+            Collections.shuffle(letters, random);
+            StringBuilder guesses = new StringBuilder();
+            letters.forEach(guesses::append);
+            games.add(() -> new String[] {
+                    replay(new HangmanManager(shared, length, 4), guesses.toString()),
+                    replay(new HangmanManager(words, length, 4), guesses.toString())});
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            for (Future<String[]> game : pool.invokeAll(games)) {
+                String[] patterns = game.get();
+                Assert.assertEquals(patterns[1], patterns[0]);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
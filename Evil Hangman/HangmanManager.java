@@ -1,178 +1,272 @@
-import java.util.*;
-
-/**
- * Matthew Niculae
- * Professor Knisley
- * EGR227 Data Structures - Evil Hangman
- * 3/5/21
- *
- * Description of class:
- * This class initializes the constructor with the corresponding
- * beginning values, and returns any errors if initialized with
- * the wrong values. The primary purpose it to record each
- * guess that the player makes and then use that guess to create
- * patterns for every word in the dictionary. Once it has created
- * those patterns, the program will determine a new index of strings
- * from which it applies to the next input that a player provides.
- */
-public class HangmanManager {
-
-    private int wordSize;
-    private int guessLeft;
-    private String ogPattern = "";
-    private String rightPattern = "";
-
-    private Collection<String> dictionary;
-    private TreeSet<String> setWords;
-    private SortedSet<Character> letters = new TreeSet<>();
-
-    //HangmanManager constructor
-    //This accepts a dictionary of terms, a target word length,
-    //and the max possible number of wrong guesses that someone can make.
-    //This set of words use all the words from the dictionary file and
-    //makes sure any duplicates are removed.
-    //These values will always be used to start the state of the game.
-    public HangmanManager(Collection<String> dictionary, int length, int max) {
-        //protects the game from being initialized with improper values
-        if (length < 1 || max < 0) throw new IllegalArgumentException("Game condition is invalid!");
-
-        for (int i = 0; i < length; i++) {
-            if (i == length - 1) {
-                rightPattern += "-";
-                ogPattern += "-";
-            } else {
-                rightPattern += "- ";
-                ogPattern += "- ";
-            }
-
-        }
-
-        this.dictionary = new TreeSet<>();
-        this.setWords = new TreeSet<>();
-        this.wordSize = length;
-        this.guessLeft = max;
-
-        for (String word : dictionary) {
-            if (word.length() == length) {
-                this.dictionary.add(word);
-                setWords.add(word);
-            }
-        }
-    }
-
-    //This method is called to give access to the user the current
-    // set of words that are being quarried for hangman manager
-    public Set<String> words() {
-        return setWords;
-    }
-
-    //This method is called when the user tries to see how many guesses
-    //they have left
-    public int guessesLeft() {
-        return this.guessLeft;
-    }
-
-
-    //This method is called when the user wants to find out
-    //the current set f letters that have been guessed.
-    //The method returns all the correct guesses.
-    public SortedSet<Character> guesses() {
-        return letters;
-    }
-
-    //This method returns the correctly guessed letters in their
-    //appropriate positions in the word. Correctly guessed letters
-    //will show up while the spaces where the correct letters have not been
-    //guessed will return "-"
-    public String pattern() {
-        return rightPattern;
-    }
-
-    //This method uses the guess as a parameter to decide
-    //what set of words should be used next. It should also
-    //update the number of guesses left for the player
-    public int record(char guess) {
-
-        //throws IllegalStateException if amount of guesses left is not
-        //at least 1 or if the set is empty.
-        if (guessLeft < 1 || setWords.isEmpty()) throw new IllegalStateException("Sorry, there was an error");
-
-        //Throws IllegalArgumentException if the set of words is
-        //both nonempty and the guessed character has already been guessed.
-        if (!setWords.isEmpty() && letters.contains(guess))
-            throw new IllegalArgumentException("That letter was already guessed");
-
-        //Adds a letter to the set of guesses
-        //since the set doesn't contain it already
-        letters.add(guess);
-
-        //Uses the guess to decide the next
-        //set of words, and also uses the guess
-        //to decide the best pattern
-        String pattern = patternHelper(guess);
-
-
-        //Update the guessed letter set
-        //with the letter printed out to the
-        //correct corresponding index location
-        int foundChar = 0;
-        for (int i = 0; i < pattern.length(); i++) {
-            if (pattern.charAt(i) == guess) {
-                foundChar++;
-            }
-        }
-
-        //return the number of guesses they have left
-        if (foundChar == 0) {
-            guessLeft--;
-        }
-        return foundChar;
-    }
-
-    private String patternHelper(char guess) {
-        Map<String, TreeSet<String>> map = new TreeMap<>();
-        StringBuilder pattern = new StringBuilder();
-
-        //sorts through all the letters in guesses
-        //and replaces the hyphens in the pattern
-        for (String word : setWords) {
-            pattern = new StringBuilder();
-            if (!rightPattern.equals(ogPattern)) {
-                pattern.append(rightPattern);
-            } else {
-                for (int i = 0; i < wordSize; i++) {
-                    if (i == wordSize - 1) {
-                        pattern.append("-");
-                    } else {
-                        pattern.append("- ");
-                    }
-
-                }
-            }
-            for (int i = 0; i < word.length(); i++) {
-                if (word.charAt(i) == guess) {
-                    pattern.replace(i * 2, i * 2 + 1, "" + guess);
-                }
-            }
-            if (!map.containsKey(pattern.toString())) {
-                TreeSet<String> set = new TreeSet<>();
-                set.add(word);
-                map.put(pattern.toString(), set);
-            } else {
-                map.get(pattern.toString()).add(word);
-            }
-        }
-
-        TreeSet<String> largestSet = new TreeSet<>();
-        //finds the largest set of words which can be used to update the word set
-        rightPattern = pattern.toString();
-        for (String key : map.keySet()) {
-            if (map.get(key).size() > largestSet.size()) {
-                largestSet = map.get(key);
-                rightPattern = key;
-            }
-        }
-        setWords = largestSet;
-        return rightPattern;
-    }
-}
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Matthew Niculae
+ * Professor Knisley
+ * EGR227 Data Structures - Evil Hangman
+ * 3/5/21
+ *
+ * Description of class:
+ * This class initializes the constructor with the corresponding
+ * beginning values, and returns any errors if initialized with
+ * the wrong values. The primary purpose it to record each
+ * guess that the player makes and then use that guess to create
+ * patterns for every word in the dictionary. Once it has created
+ * those patterns, the program will determine a new index of strings
+ * from which it applies to the next input that a player provides.
+ */
+public class HangmanManager {
+
+    private int wordSize;
+    private int guessLeft;
+    private String ogPattern = "";
+    private String rightPattern = "";
+
+    private SortedSet<Character> letters = new TreeSet<>();
+
+    //letters with their own entry in the position index
+    private static final int ALPHABET = HangmanDictionary.ALPHABET;
+
+    //families of at least this many candidates are counted in parallel on
+    //the common fork/join pool, in chunks of PARALLEL_CHUNK candidates
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+    private static final int PARALLEL_CHUNK = 1 << 12;
+
+    //Every word of the game's length has an ID, its index in the sorted
+    //pool. positions[id * ALPHABET + letter] holds the positions of that
+    //letter in the word as a bitmask, so a guess of a to z needs one read
+    //per word. Both are shared with the dictionary and never changed.
+    //candidates holds the IDs of the words still possible.
+    private String[] pool;
+    private long[] positions;
+    private CandidateSet candidates;
+
+    //HangmanManager constructor
+    //This accepts a dictionary of terms, a target word length,
+    //and the max possible number of wrong guesses that someone can make.
+    //This set of words use all the words from the dictionary file and
+    //makes sure any duplicates are removed.
+    //These values will always be used to start the state of the game.
+    public HangmanManager(Collection<String> dictionary, int length, int max) {
+        this(HangmanDictionary.forLength(dictionary, length), length, max);
+    }
+
+    //HangmanManager constructor for a shared dictionary
+    //This starts a game on the words of the given length from a
+    //dictionary that many games can use at once. Nothing is copied, so
+    //the game starts in the same time however big the dictionary is.
+    public HangmanManager(HangmanDictionary dictionary, int length, int max) {
+        //protects the game from being initialized with improper values
+        if (length < 1 || max < 0) throw new IllegalArgumentException("Game condition is invalid!");
+
+        for (int i = 0; i < length; i++) {
+            if (i == length - 1) {
+                rightPattern += "-";
+                ogPattern += "-";
+            } else {
+                rightPattern += "- ";
+                ogPattern += "- ";
+            }
+
+        }
+
+        this.wordSize = length;
+        this.guessLeft = max;
+        this.pool = dictionary.pool(length);
+        this.positions = dictionary.positions(length);
+
+        //patterns keep one bit per letter in a long
+        if (positions == null) {
+            throw new IllegalArgumentException("Words over " + Long.SIZE
+                    + " letters are not supported");
+        }
+        candidates = new CandidateSet(pool);
+    }
+
+    //This method is called to give access to the user the current
+    // set of words that are being quarried for hangman manager.
+    //The set is a read-only view that follows the game as it goes.
+    public Set<String> words() {
+        return candidates;
+    }
+
+    //This method is called when the user tries to see how many guesses
+    //they have left
+    public int guessesLeft() {
+        return this.guessLeft;
+    }
+
+
+    //This method is called when the user wants to find out
+    //the current set f letters that have been guessed.
+    //The method returns all the correct guesses.
+    public SortedSet<Character> guesses() {
+        return letters;
+    }
+
+    //This method returns the correctly guessed letters in their
+    //appropriate positions in the word. Correctly guessed letters
+    //will show up while the spaces where the correct letters have not been
+    //guessed will return "-"
+    public String pattern() {
+        return rightPattern;
+    }
+
+    //This method uses the guess as a parameter to decide
+    //what set of words should be used next. It should also
+    //update the number of guesses left for the player
+    public int record(char guess) {
+
+        //throws IllegalStateException if amount of guesses left is not
+        //at least 1 or if the set is empty.
+        if (guessLeft < 1 || candidates.isEmpty()) throw new IllegalStateException("Sorry, there was an error");
+
+        //Throws IllegalArgumentException if the set of words is
+        //both nonempty and the guessed character has already been guessed.
+        if (!candidates.isEmpty() && letters.contains(guess))
+            throw new IllegalArgumentException("That letter was already guessed");
+
+        //Adds a letter to the set of guesses
+        //since the set doesn't contain it already
+        letters.add(guess);
+
+        //Uses the guess to decide the next
+        //set of words, and also uses the guess
+        //to decide the best pattern
+        String pattern = patternHelper(guess);
+
+
+        //Update the guessed letter set
+        //with the letter printed out to the
+        //correct corresponding index location
+        int foundChar = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == guess) {
+                foundChar++;
+            }
+        }
+
+        //return the number of guesses they have left
+        if (foundChar == 0) {
+            guessLeft--;
+        }
+        return foundChar;
+    }
+
+    //This method groups the remaining words into families by where the
+    //guess appears in them, keeps the largest family and returns its
+    //pattern. Each family is keyed by a bitmask of the positions holding
+    //the guess (bit i for letter i), so the words are counted by a
+    //primitive key and the pattern string is built only for the winner.
+    private String patternHelper(char guess) {
+        FamilyCounter families = countFamilies(guess);
+
+        //finds the largest family; among families of the same size the
+        //one whose pattern comes first alphabetically wins
+        long best = 0;
+        int bestCount = 0;
+        for (int slot = 0; slot < families.capacity(); slot++) {
+            int count = families.countAt(slot);
+            long mask = families.keyAt(slot);
+            if (count > bestCount || (count == bestCount && count > 0
+                    && comesBefore(mask, best, guess))) {
+                best = mask;
+                bestCount = count;
+            }
+        }
+
+        //keeps the words of the largest family, in place and in order
+        long family = best;
+        candidates.retainIf(id -> mask(id, guess) == family, bestCount);
+
+        char[] pattern = rightPattern.toCharArray();
+        for (long rest = best; rest != 0; rest &= rest - 1) {
+            pattern[2 * Long.numberOfTrailingZeros(rest)] = guess;
+        }
+        rightPattern = new String(pattern);
+        return rightPattern;
+    }
+
+    //This method counts the candidates in each family for the guess.
+    //Large candidate sets are split into chunks counted in parallel,
+    //whose counts are then added together.
+    private FamilyCounter countFamilies(char guess) {
+        int size = candidates.size();
+        if (size < PARALLEL_THRESHOLD) {
+            return countRange(guess, 0, size);
+        }
+        return ForkJoinPool.commonPool().invoke(new CountTask(guess, 0, size));
+    }
+
+    //This method counts the families of the candidates from index from
+    //(inclusive) to index to (exclusive)
+    private FamilyCounter countRange(char guess, int from, int to) {
+        FamilyCounter families = new FamilyCounter();
+        for (int i = from; i < to; i++) {
+            families.add(mask(candidates.idAt(i), guess));
+        }
+        return families;
+    }
+
+    //counts the families of a range of candidates, splitting large ranges
+    private class CountTask extends RecursiveTask<FamilyCounter> {
+        private static final long serialVersionUID = 1L;
+
+        private final char guess;
+        private final int from;
+        private final int to;
+
+        CountTask(char guess, int from, int to) {
+            this.guess = guess;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected FamilyCounter compute() {
+            if (to - from <= PARALLEL_CHUNK) {
+                return countRange(guess, from, to);
+            }
+            int middle = from + (to - from) / 2;
+            CountTask right = new CountTask(guess, middle, to);
+            right.fork();
+            FamilyCounter families = new CountTask(guess, from, middle).compute();
+            families.addAll(right.join());
+            return families;
+        }
+    }
+
+    //This method returns the positions of the word with the given ID that
+    //hold the guess, as a bitmask with bit i set if letter i is the guess.
+    //Letters a to z are read from the index; any other guess is found by
+    //scanning the word.
+    private long mask(int id, char guess) {
+        if (guess >= 'a' && guess <= 'z') {
+            return positions[id * ALPHABET + guess - 'a'];
+        }
+        String word = pool[id];
+        long mask = 0;
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) == guess) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    //This method returns true if the pattern with the guess at the
+    //positions of mask comes alphabetically before the one with the guess
+    //at the positions of other. The patterns first differ at the lowest
+    //position where the masks differ, where one shows the guess and the
+    //other "-".
+    private static boolean comesBefore(long mask, long other, char guess) {
+        long lowest = Long.lowestOneBit(mask ^ other);
+        if (lowest == 0) {
+            return false;
+        }
+        boolean guessShown = (mask & lowest) != 0;
+        return guessShown == (guess < '-');
+    }
+}
@@ -0,0 +1,196 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class HangmanManagerTest {
+
+    /**
+     * The TreeMap version of the game that HangmanManager replaced, kept to
+     * check that the families and patterns chosen have not changed: every
+     * word is grouped by its pattern string, and the largest family wins,
+     * the first pattern in string order among families of the same size
+     */
+    private static class ReferenceGame {
+        private SortedSet<String> words = new TreeSet<>();
+        private String pattern;
+        private int guessesLeft;
+
+        ReferenceGame(Collection<String> dictionary, int length, int max) {
+            for (String word : dictionary) {
+                if (word.length() == length) {
+                    words.add(word);
+                }
+            }
+            pattern = String.join(" ", Collections.nCopies(length, "-"));
+            guessesLeft = max;
+        }
+
+        int record(char guess) {
+            Map<String, SortedSet<String>> families = new TreeMap<>();
+            for (String word : words) {
+                StringBuilder key = new StringBuilder(pattern);
+                for (int i = 0; i < word.length(); i++) {
+                    if (word.charAt(i) == guess) {
+                        key.setCharAt(2 * i, guess);
+                    }
+                }
+                families.computeIfAbsent(key.toString(), k -> new TreeSet<>()).add(word);
+            }
+            SortedSet<String> largest = new TreeSet<>();
+            for (Map.Entry<String, SortedSet<String>> family : families.entrySet()) {
+                if (family.getValue().size() > largest.size()) {
+                    largest = family.getValue();
+                    pattern = family.getKey();
+                }
+            }
+            words = largest;
+
+            int found = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                if (pattern.charAt(i) == guess) {
+                    found++;
+                }
+            }
+            if (found == 0) {
+                guessesLeft--;
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Returns count random words of the given lengths over the first
+     * letters of the alphabet, with some upper case letters, which the
+     * position index does not cover
+     */
+    private static List<String> randomWords(Random random, int count, int maxLength,
+                                            int letters) {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int length = 1 + random.nextInt(maxLength);
+            StringBuilder word = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                char letter = (char) ('a' + random.nextInt(letters));
+                word.append(random.nextInt(20) == 0 ? Character.toUpperCase(letter) : letter);
+            }
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * Plays the guesses in both games while they have guesses left and
+     * words, checking they agree after every guess
+     */
+    private static void assertSameGame(ReferenceGame reference, HangmanManager manager,
+                                       List<Character> guesses) {
+        assertSameState(reference, manager);
+        for (char guess : guesses) {
+            if (manager.guessesLeft() < 1 || manager.words().isEmpty()) {
+                return;
+            }
+            Assert.assertEquals(reference.record(guess), manager.record(guess));
+            assertSameState(reference, manager);
+        }
+    }
+
+    private static void assertSameState(ReferenceGame reference, HangmanManager manager) {
+        Assert.assertEquals(reference.pattern, manager.pattern());
+        Assert.assertEquals(new ArrayList<>(reference.words), new ArrayList<>(manager.words()));
+        Assert.assertEquals(reference.guessesLeft, manager.guessesLeft());
+    }
+
+    /**
+     * Returns the letters a game over the given alphabet may be guessed
+     * with, upper case included, shuffled
+     */
+    private static List<Character> guesses(Random random, int letters) {
+        List<Character> guesses = new ArrayList<>();
+        for (char letter = 'a'; letter < 'a' + letters; letter++) {
+            guesses.add(letter);
+            guesses.add(Character.toUpperCase(letter));
+        }
+        Collections.shuffle(guesses, random);
+        return guesses;
+    }
+
+    /**
+     * Of two families of the same size, the one whose pattern comes first
+     * as a string wins, so "- a" beats "a -"
+     */
+    @Test
+    public void testTieChoosesFirstPattern() {
+        HangmanManager manager = new HangmanManager(Arrays.asList("ab", "ba"), 2, 5);
+        Assert.assertEquals(1, manager.record('a'));
+        Assert.assertEquals("- a", manager.pattern());
+        Assert.assertEquals(Collections.singletonList("ba"), new ArrayList<>(manager.words()));
+        Assert.assertEquals(5, manager.guessesLeft());
+    }
+
+    /**
+     * The family without the guess ties with one holding it and wins,
+     * costing a guess
+     */
+    @Test
+    public void testTieChoosesFamilyWithoutGuess() {
+        HangmanManager manager = new HangmanManager(Arrays.asList("ab", "cd"), 2, 5);
+        Assert.assertEquals(0, manager.record('a'));
+        Assert.assertEquals("- -", manager.pattern());
+        Assert.assertEquals(Collections.singletonList("cd"), new ArrayList<>(manager.words()));
+        Assert.assertEquals(4, manager.guessesLeft());
+    }
+
+    /**
+     * The largest family wins whatever its pattern
+     */
+    @Test
+    public void testLargestFamilyWins() {
+        HangmanManager manager = new HangmanManager(Arrays.asList("aa", "ab", "bb", "cb"), 2, 5);
+        Assert.assertEquals(1, manager.record('b'));
+        Assert.assertEquals("- b", manager.pattern());
+        Assert.assertEquals(Arrays.asList("ab", "cb"), new ArrayList<>(manager.words()));
+    }
+
+    /**
+     * Whole games on random dictionaries, many with ties, choose the same
+     * families and patterns as the TreeMap version, from a collection and
+     * from a shared dictionary
+     */
+    @Test
+    public void testMatchesReference() {
+        Random random = new Random(21);
+        for (int game = 0; game < 500; game++) {
+            int letters = 2 + random.nextInt(5);
+            List<String> words = randomWords(random, random.nextInt(300), 6, letters);
+            int length = 1 + random.nextInt(6);
+            int max = random.nextInt(8);
+            HangmanManager manager = game % 2 == 0
+                    ? new HangmanManager(words, length, max)
+                    : new HangmanManager(new HangmanDictionary(words), length, max);
+            assertSameGame(new ReferenceGame(words, length, max), manager,
+                    guesses(random, letters));
+        }
+    }
+
+    /**
+     * Candidate sets large enough to be counted in parallel choose the same
+     * families and patterns as the TreeMap version
+     */
+    @Test
+    public void testMatchesReferenceInParallel() {
+        Random random = new Random(25);
+        for (int game = 0; game < 3; game++) {
+            List<String> words = new ArrayList<>();
+            for (String word : randomWords(random, 120000, 10, 4)) {
+                if (word.length() >= 8) {
+                    words.add(word.substring(0, 8));
+                }
+            }
+            HangmanDictionary dictionary = new HangmanDictionary(words);
+            Assert.assertTrue(dictionary.size(8) > 1 << 14);
+            assertSameGame(new ReferenceGame(words, 8, 6), new HangmanManager(dictionary, 8, 6),
+                    guesses(random, 4));
+        }
+    }
+}